@@ -0,0 +1,127 @@
+package com.github.ryarnyah;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A list of APDU commands and their expected responses.
+ * <p>
+ * One command per line, optionally followed by a semicolon and the expected response. Bytes are written in
+ * hexadecimal, spaces are ignored and {@code XX} matches any byte. Lines starting with {@code #} or
+ * {@code //} are comments.
+ * <pre>
+ * # Select the applet
+ * 00A4040007A0000000030000 ; 9000
+ * 80CA000000 ; XXXX 9000
+ * </pre>
+ */
+public class ApduScript {
+    /**
+     * Whole bytes only: {@link Command#matches(byte[])} compares expected responses byte by byte.
+     */
+    private static final Pattern EXPECTED = Pattern.compile("(?:[0-9A-F]{2}|XX)*");
+
+    private final Path path;
+    private final List<Command> commands;
+
+    private ApduScript(Path path, List<Command> commands) {
+        this.path = path;
+        this.commands = Collections.unmodifiableList(commands);
+    }
+
+    public static ApduScript parse(Path path) throws IOException {
+        List<Command> commands = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.startsWith("//")) {
+                continue;
+            }
+            String[] parts = trimmed.split(";", 2);
+            String expected = parts.length > 1 ? normalize(parts[1]) : null;
+            if (expected != null && !EXPECTED.matcher(expected).matches()) {
+                throw new IOException(path + ":" + lineNumber + ": invalid expected response " + parts[1].trim());
+            }
+            try {
+                commands.add(new Command(lineNumber, Hex.decodeHex(normalize(parts[0])), expected));
+            } catch (DecoderException e) {
+                throw new IOException(path + ":" + lineNumber + ": invalid command " + parts[0].trim(), e);
+            }
+        }
+        return new ApduScript(path, commands);
+    }
+
+    private static String normalize(String hex) {
+        return hex.replaceAll("\\s+", "").toUpperCase();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    public static class Command {
+        private final int line;
+        private final byte[] apdu;
+        private final String expected;
+
+        private Command(int line, byte[] apdu, String expected) {
+            this.line = line;
+            this.apdu = apdu;
+            this.expected = expected;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public byte[] getApdu() {
+            return apdu;
+        }
+
+        /**
+         * INS byte of the command, -1 for a malformed APDU.
+         */
+        public int getIns() {
+            return apdu.length > 1 ? apdu[1] & 0xFF : -1;
+        }
+
+        public String getExpected() {
+            return expected;
+        }
+
+        public boolean matches(byte[] response) {
+            if (expected == null) {
+                return true;
+            }
+            String actual = Hex.encodeHexString(response, false);
+            if (actual.length() != expected.length()) {
+                return false;
+            }
+            for (int i = 0; i < expected.length(); i += 2) {
+                if (!expected.startsWith("XX", i) && !expected.regionMatches(i, actual, i, 2)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.github.ryarnyah;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Execution counters of applet classes instrumented by {@link AppletInstrumenter}.
+ * <p>
+ * This class is defined again in every instrumenting simulator class loader, so each simulator has its own
+ * counters; it must only depend on the JDK and on the Javacard API found in that class loader. A simulator is
+ * driven by a single thread, counters are not synchronized.
+ */
+public final class AppletCounters {
+    public static final int BYTECODES = 0;
+    public static final int COMMITS = 1;
+    public static final int EEPROM_WRITES = 2;
+    public static final int TRANSIENT_ARRAYS = 3;
+
+    private static final String UTIL_CLASS = "javacard.framework.Util";
+
+    private static final long[] COUNTERS = new long[4];
+    /**
+     * Arrays living in RAM: transient arrays and APDU buffers. Arrays have identity equality.
+     */
+    private static final Set<Object> VOLATILE_ARRAYS = Collections.newSetFromMap(new WeakHashMap<>());
+
+    private static final MethodHandle ARRAY_COPY = findUtil("arrayCopy",
+            MethodType.methodType(short.class, byte[].class, short.class, byte[].class, short.class, short.class));
+    private static final MethodHandle ARRAY_COPY_NON_ATOMIC = findUtil("arrayCopyNonAtomic",
+            MethodType.methodType(short.class, byte[].class, short.class, byte[].class, short.class, short.class));
+    private static final MethodHandle ARRAY_FILL_NON_ATOMIC = findUtil("arrayFillNonAtomic",
+            MethodType.methodType(short.class, byte[].class, short.class, short.class, byte.class));
+    private static final MethodHandle SET_SHORT = findUtil("setShort",
+            MethodType.methodType(short.class, byte[].class, short.class, short.class));
+
+    private AppletCounters() {
+    }
+
+    private static MethodHandle findUtil(String name, MethodType type) {
+        try {
+            Class<?> util = Class.forName(UTIL_CLASS, false, AppletCounters.class.getClassLoader());
+            return MethodHandles.publicLookup().findStatic(util, name, type);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * @return counters indexed by {@link #BYTECODES}, {@link #COMMITS}, {@link #EEPROM_WRITES} and
+     * {@link #TRANSIENT_ARRAYS}
+     */
+    public static long[] snapshot() {
+        return COUNTERS.clone();
+    }
+
+    public static void bytecodes(int count) {
+        COUNTERS[BYTECODES] += count;
+    }
+
+    public static void commit() {
+        COUNTERS[COMMITS]++;
+    }
+
+    public static void transientArray(Object array) {
+        COUNTERS[TRANSIENT_ARRAYS]++;
+        VOLATILE_ARRAYS.add(array);
+    }
+
+    public static void volatileArray(Object array) {
+        VOLATILE_ARRAYS.add(array);
+    }
+
+    public static void fieldWrite() {
+        COUNTERS[EEPROM_WRITES]++;
+    }
+
+    private static void arrayWrite(Object array, int length) {
+        if (!VOLATILE_ARRAYS.contains(array)) {
+            COUNTERS[EEPROM_WRITES] += length;
+        }
+    }
+
+    /**
+     * BASTORE, which also stores into boolean arrays.
+     */
+    public static void bastore(Object array, int index, int value) {
+        if (array instanceof boolean[]) {
+            ((boolean[]) array)[index] = (value & 1) != 0;
+        } else {
+            ((byte[]) array)[index] = (byte) value;
+        }
+        arrayWrite(array, 1);
+    }
+
+    public static void sastore(short[] array, int index, int value) {
+        array[index] = (short) value;
+        arrayWrite(array, 1);
+    }
+
+    public static void iastore(int[] array, int index, int value) {
+        array[index] = value;
+        arrayWrite(array, 1);
+    }
+
+    public static void aastore(Object[] array, int index, Object value) {
+        array[index] = value;
+        arrayWrite(array, 1);
+    }
+
+    public static short arrayCopy(byte[] src, short srcOff, byte[] dest, short destOff, short length)
+            throws Throwable {
+        short result = (short) ARRAY_COPY.invokeExact(src, srcOff, dest, destOff, length);
+        arrayWrite(dest, length);
+        return result;
+    }
+
+    public static short arrayCopyNonAtomic(byte[] src, short srcOff, byte[] dest, short destOff, short length)
+            throws Throwable {
+        short result = (short) ARRAY_COPY_NON_ATOMIC.invokeExact(src, srcOff, dest, destOff, length);
+        arrayWrite(dest, length);
+        return result;
+    }
+
+    public static short arrayFillNonAtomic(byte[] bArray, short bOff, short bLen, byte bValue) throws Throwable {
+        short result = (short) ARRAY_FILL_NON_ATOMIC.invokeExact(bArray, bOff, bLen, bValue);
+        arrayWrite(bArray, bLen);
+        return result;
+    }
+
+    public static short setShort(byte[] bArray, short bOff, short sValue) throws Throwable {
+        short result = (short) SET_SHORT.invokeExact(bArray, bOff, sValue);
+        arrayWrite(bArray, 2);
+        return result;
+    }
+}
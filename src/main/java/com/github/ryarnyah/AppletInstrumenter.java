@@ -0,0 +1,232 @@
+package com.github.ryarnyah;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Instrument applet classes so that they update {@link AppletCounters}.
+ * <p>
+ * <ul>
+ * <li>bytecodes: every executed JVM instruction, counted per basic block;</li>
+ * <li>commits: calls to JCSystem.commitTransaction;</li>
+ * <li>EEPROM writes: field stores, element stores into persistent arrays and bytes written into persistent
+ * arrays by Util.arrayCopy, arrayCopyNonAtomic, arrayFillNonAtomic and setShort;</li>
+ * <li>transient arrays: calls to JCSystem.makeTransient*Array and makeGlobalArray.</li>
+ * </ul>
+ * Arrays returned by the JCSystem transient factories and by APDU.getBuffer are RAM, element stores into
+ * them are not EEPROM writes.
+ */
+public class AppletInstrumenter {
+    private static final String COUNTERS = AppletCounters.class.getName().replace('.', '/');
+    private static final String JCSYSTEM = "javacard/framework/JCSystem";
+    private static final String APDU = "javacard/framework/APDU";
+    private static final String UTIL = "javacard/framework/Util";
+
+    /**
+     * Util methods writing into an array, by name and descriptor. AppletCounters has the same methods.
+     */
+    private static final Map<String, String> UTIL_WRITES = new HashMap<>();
+
+    static {
+        UTIL_WRITES.put("arrayCopy", "([BS[BSS)S");
+        UTIL_WRITES.put("arrayCopyNonAtomic", "([BS[BSS)S");
+        UTIL_WRITES.put("arrayFillNonAtomic", "([BSSB)S");
+        UTIL_WRITES.put("setShort", "([BSS)S");
+    }
+
+    private AppletInstrumenter() {
+    }
+
+    /**
+     * @param classFile class file of an applet class
+     * @return the instrumented class file
+     */
+    public static byte[] instrument(byte[] classFile) {
+        ClassReader reader = new ClassReader(classFile);
+        ClassWriter writer = new ClassWriter(reader, ClassWriter.COMPUTE_MAXS);
+        reader.accept(new ClassVisitor(Opcodes.ASM9, writer) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature,
+                                             String[] exceptions) {
+                MethodVisitor mv = super.visitMethod(access, name, descriptor, signature, exceptions);
+                return mv == null ? null : new CountingMethodVisitor(mv);
+            }
+        }, 0);
+        return writer.toByteArray();
+    }
+
+    /**
+     * Instructions of a basic block are added up and flushed to the counters before the instruction ending
+     * the block (jump, switch, return, throw or invocation) or before a label, which may be a jump target.
+     * Inserted code leaves the operand stack unchanged, so existing stack map frames stay valid.
+     */
+    private static class CountingMethodVisitor extends MethodVisitor {
+        private int pending;
+
+        CountingMethodVisitor(MethodVisitor mv) {
+            super(Opcodes.ASM9, mv);
+        }
+
+        private void flush() {
+            if (pending == 0) {
+                return;
+            }
+            if (pending <= Short.MAX_VALUE) {
+                super.visitIntInsn(Opcodes.SIPUSH, pending);
+            } else {
+                super.visitLdcInsn(pending);
+            }
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, COUNTERS, "bytecodes", "(I)V", false);
+            pending = 0;
+        }
+
+        private void counter(String name, String descriptor) {
+            super.visitMethodInsn(Opcodes.INVOKESTATIC, COUNTERS, name, descriptor, false);
+        }
+
+        @Override
+        public void visitLabel(Label label) {
+            flush();
+            super.visitLabel(label);
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            pending++;
+            switch (opcode) {
+                case Opcodes.BASTORE:
+                    counter("bastore", "(Ljava/lang/Object;II)V");
+                    return;
+                case Opcodes.SASTORE:
+                    counter("sastore", "([SII)V");
+                    return;
+                case Opcodes.IASTORE:
+                    counter("iastore", "([III)V");
+                    return;
+                case Opcodes.AASTORE:
+                    counter("aastore", "([Ljava/lang/Object;ILjava/lang/Object;)V");
+                    return;
+                case Opcodes.IRETURN:
+                case Opcodes.LRETURN:
+                case Opcodes.FRETURN:
+                case Opcodes.DRETURN:
+                case Opcodes.ARETURN:
+                case Opcodes.RETURN:
+                case Opcodes.ATHROW:
+                    flush();
+                    break;
+                default:
+                    break;
+            }
+            super.visitInsn(opcode);
+        }
+
+        @Override
+        public void visitIntInsn(int opcode, int operand) {
+            pending++;
+            super.visitIntInsn(opcode, operand);
+        }
+
+        @Override
+        public void visitVarInsn(int opcode, int var) {
+            pending++;
+            if (opcode == Opcodes.RET) {
+                flush();
+            }
+            super.visitVarInsn(opcode, var);
+        }
+
+        @Override
+        public void visitTypeInsn(int opcode, String type) {
+            pending++;
+            super.visitTypeInsn(opcode, type);
+        }
+
+        @Override
+        public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+            pending++;
+            if (opcode == Opcodes.PUTFIELD || opcode == Opcodes.PUTSTATIC) {
+                // Objects are persistent
+                counter("fieldWrite", "()V");
+            }
+            super.visitFieldInsn(opcode, owner, name, descriptor);
+        }
+
+        @Override
+        public void visitMethodInsn(int opcode, String owner, String name, String descriptor,
+                                    boolean isInterface) {
+            pending++;
+            flush();
+            if (JCSYSTEM.equals(owner) && "commitTransaction".equals(name)) {
+                counter("commit", "()V");
+            }
+            if (opcode == Opcodes.INVOKESTATIC && UTIL.equals(owner) && descriptor.equals(UTIL_WRITES.get(name))) {
+                super.visitMethodInsn(opcode, COUNTERS, name, descriptor, false);
+                return;
+            }
+            super.visitMethodInsn(opcode, owner, name, descriptor, isInterface);
+            if (JCSYSTEM.equals(owner) && (name.startsWith("makeTransient") || "makeGlobalArray".equals(name))) {
+                super.visitInsn(Opcodes.DUP);
+                counter("transientArray", "(Ljava/lang/Object;)V");
+            } else if (APDU.equals(owner) && ("getBuffer".equals(name) || "getCurrentAPDUBuffer".equals(name))) {
+                super.visitInsn(Opcodes.DUP);
+                counter("volatileArray", "(Ljava/lang/Object;)V");
+            }
+        }
+
+        @Override
+        public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle,
+                                           Object... bootstrapMethodArguments) {
+            pending++;
+            flush();
+            super.visitInvokeDynamicInsn(name, descriptor, bootstrapMethodHandle, bootstrapMethodArguments);
+        }
+
+        @Override
+        public void visitJumpInsn(int opcode, Label label) {
+            pending++;
+            flush();
+            super.visitJumpInsn(opcode, label);
+        }
+
+        @Override
+        public void visitLdcInsn(Object value) {
+            pending++;
+            super.visitLdcInsn(value);
+        }
+
+        @Override
+        public void visitIincInsn(int var, int increment) {
+            pending++;
+            super.visitIincInsn(var, increment);
+        }
+
+        @Override
+        public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+            pending++;
+            flush();
+            super.visitTableSwitchInsn(min, max, dflt, labels);
+        }
+
+        @Override
+        public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+            pending++;
+            flush();
+            super.visitLookupSwitchInsn(dflt, keys, labels);
+        }
+
+        @Override
+        public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+            pending++;
+            super.visitMultiANewArrayInsn(descriptor, numDimensions);
+        }
+    }
+}
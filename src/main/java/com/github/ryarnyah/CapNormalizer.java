@@ -0,0 +1,116 @@
+package com.github.ryarnyah;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Rewrite CAP files so that identical inputs give byte identical CAP files.
+ * <p>
+ * Entries are written in load order (manifest, then components in the order of the JCVM specification,
+ * then any other entry by name), with a fixed timestamp and without extra fields. The creation time
+ * stored in the manifest by the converter is replaced by the same timestamp.
+ */
+public class CapNormalizer {
+    private static final String MANIFEST = "META-INF/MANIFEST.MF";
+    private static final String CREATION_TIME_ATTRIBUTE = "Java-Card-CAP-Creation-Time";
+    private static final List<String> COMPONENTS = Arrays.asList(
+            "Header.cap", "Directory.cap", "Import.cap", "Applet.cap", "Class.cap", "Method.cap",
+            "StaticField.cap", "Export.cap", "ConstantPool.cap", "RefLocation.cap", "Descriptor.cap", "Debug.cap");
+    private static final DateTimeFormatter CREATION_TIME_FORMAT =
+            DateTimeFormatter.ofPattern("EEE MMM dd HH:mm:ss zzz yyyy", Locale.US).withZone(ZoneId.of("UTC"));
+
+    private CapNormalizer() {
+    }
+
+    /**
+     * Normalize a CAP file in place.
+     *
+     * @param cap       CAP file
+     * @param timestamp timestamp of every entry
+     */
+    public static void normalize(Path cap, Instant timestamp) throws IOException {
+        LocalDateTime entryTime = LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC);
+        Path tmp = Files.createTempFile(cap.getParent(), cap.getFileName().toString(), ".tmp");
+        try {
+            try (ZipFile zipFile = new ZipFile(cap.toFile());
+                 OutputStream os = Files.newOutputStream(tmp);
+                 ZipOutputStream zos = new ZipOutputStream(os)) {
+                List<ZipEntry> entries = new ArrayList<>();
+                Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+                while (enumeration.hasMoreElements()) {
+                    entries.add(enumeration.nextElement());
+                }
+                entries.sort(Comparator.comparingInt((ZipEntry e) -> rank(e.getName())).thenComparing(ZipEntry::getName));
+
+                for (ZipEntry entry : entries) {
+                    byte[] data;
+                    try (InputStream is = zipFile.getInputStream(entry)) {
+                        data = is.readAllBytes();
+                    }
+                    if (MANIFEST.equals(entry.getName())) {
+                        data = normalizeManifest(data, timestamp);
+                    }
+                    ZipEntry normalized = new ZipEntry(entry.getName());
+                    normalized.setTimeLocal(entryTime);
+                    normalized.setMethod(entry.getMethod());
+                    if (entry.getMethod() == ZipEntry.STORED) {
+                        CRC32 crc = new CRC32();
+                        crc.update(data);
+                        normalized.setSize(data.length);
+                        normalized.setCompressedSize(data.length);
+                        normalized.setCrc(crc.getValue());
+                    }
+                    zos.putNextEntry(normalized);
+                    zos.write(data);
+                    zos.closeEntry();
+                }
+            }
+            Files.move(tmp, cap, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static int rank(String name) {
+        if (MANIFEST.equals(name)) {
+            return 0;
+        }
+        int component = COMPONENTS.indexOf(name.substring(name.lastIndexOf('/') + 1));
+        return component >= 0 ? component + 1 : COMPONENTS.size() + 1;
+    }
+
+    private static byte[] normalizeManifest(byte[] data, Instant timestamp) throws IOException {
+        Manifest manifest = new Manifest(new ByteArrayInputStream(data));
+        if (manifest.getMainAttributes().getValue(CREATION_TIME_ATTRIBUTE) == null) {
+            return data;
+        }
+        manifest.getMainAttributes().putValue(CREATION_TIME_ATTRIBUTE, CREATION_TIME_FORMAT.format(timestamp));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        manifest.write(out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.ryarnyah;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An error or a warning reported by the Javacard converter.
+ */
+public class ConverterDiagnostic {
+    /**
+     * Matches "error: ..." (JC 2.x) and "[ ERROR: ] ..." (JC 3.x) lines.
+     */
+    private static final Pattern DIAGNOSTIC = Pattern.compile(
+            "^\\s*(?:(error|warning):|\\[\\s*(ERROR|WARNING):\\s*\\])\\s*(.*)$");
+
+    private static final Pattern LINE = Pattern.compile("^line\\s+(\\d+)$");
+
+    /**
+     * Qualified class name, with an optional method descriptor: com.foo.MyApplet.process(Ljavacard/framework/APDU;)V
+     */
+    private static final Pattern CLASS = Pattern.compile("^([\\w$]+(?:[./][\\w$]+)+?)(?:\\.([\\w$<>]+\\(.*\\)\\S*))?$");
+
+    private static final Pattern METHOD = Pattern.compile("^method\\s+(\\S+)$");
+
+    public enum Severity {
+        ERROR, WARNING
+    }
+
+    private final Severity severity;
+    private final int line;
+    private final String className;
+    private final String method;
+    private final String message;
+
+    public ConverterDiagnostic(Severity severity, int line, String className, String method, String message) {
+        this.severity = severity;
+        this.line = line;
+        this.className = className;
+        this.method = method;
+        this.message = message;
+    }
+
+    /**
+     * Parse a converter output line.
+     * <p>
+     * The converter prints "[line N: ]class: [method m: ]message"; a segment is only taken as the class when it
+     * sits at that position and names a class of the converted package, so that class names quoted in the
+     * message stay in the message.
+     *
+     * @param text        line printed by the converter
+     * @param packageName package being converted
+     * @return the diagnostic or null if the line is not an error or a warning
+     */
+    public static ConverterDiagnostic parse(String text, String packageName) {
+        Matcher matcher = DIAGNOSTIC.matcher(text);
+        if (!matcher.matches()) {
+            return null;
+        }
+        Severity severity = Severity.valueOf((matcher.group(1) != null ? matcher.group(1) : matcher.group(2))
+                .toUpperCase());
+        List<String> segments = new ArrayList<>(Arrays.asList(matcher.group(3).split(":\\s+")));
+
+        int line = -1;
+        String className = null;
+        String method = null;
+        if (segments.size() > 1) {
+            Matcher lineMatcher = LINE.matcher(segments.get(0).trim());
+            if (lineMatcher.matches()) {
+                line = Integer.parseInt(lineMatcher.group(1));
+                segments.remove(0);
+            }
+        }
+        if (segments.size() > 1 && packageName != null) {
+            Matcher classMatcher = CLASS.matcher(segments.get(0).trim());
+            if (classMatcher.matches()
+                    && classMatcher.group(1).replace('/', '.').startsWith(packageName + ".")) {
+                segments.remove(0);
+                className = classMatcher.group(1).replace('/', '.');
+                method = classMatcher.group(2);
+            }
+        }
+        if (className != null && method == null && segments.size() > 1) {
+            Matcher methodMatcher = METHOD.matcher(segments.get(0).trim());
+            if (methodMatcher.matches()) {
+                segments.remove(0);
+                method = methodMatcher.group(1);
+            }
+        }
+        return new ConverterDiagnostic(severity, line, className, method, String.join(": ", segments).trim());
+    }
+
+    public Severity getSeverity() {
+        return severity;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        if (className != null) {
+            builder.append(className);
+            if (method != null) {
+                builder.append('#').append(method);
+            }
+            if (line >= 0) {
+                builder.append(" (line ").append(line).append(')');
+            }
+            builder.append(": ");
+        } else if (line >= 0) {
+            builder.append("line ").append(line).append(": ");
+        }
+        return builder.append(message).toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.github.ryarnyah;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * JVM options of the forked converter.
+ * <p>
+ * A conversion lives for a few seconds: the {@value #SHORT_LIVED} profile only uses the C1 compiler, the serial
+ * collector and a fixed initial heap, and from Java 19 keeps a dynamic CDS archive of the converter classes
+ * shared by all forks.
+ */
+public class ConverterJvmProfile {
+    public static final String SHORT_LIVED = "short-lived";
+    public static final String NONE = "none";
+
+    private static final Pattern JAVA_VERSION = Pattern.compile("^JAVA_VERSION=\"(1\\.)?(\\d+).*\"$");
+
+    private ConverterJvmProfile() {
+    }
+
+    /**
+     * Major version of a java executable, read from the release file of its home.
+     *
+     * @return the major version, 0 if unknown
+     */
+    public static int getJavaVersion(String javaExecutable) {
+        Path bin = Paths.get(javaExecutable).toAbsolutePath().getParent();
+        if (bin == null || bin.getParent() == null) {
+            return 0;
+        }
+        Path release = bin.getParent().resolve("release");
+        if (!Files.isRegularFile(release)) {
+            return 0;
+        }
+        try {
+            for (String line : Files.readAllLines(release, StandardCharsets.UTF_8)) {
+                Matcher matcher = JAVA_VERSION.matcher(line.trim());
+                if (matcher.matches()) {
+                    return Integer.parseInt(matcher.group(2));
+                }
+            }
+        } catch (IOException e) {
+            // Unknown version
+        }
+        return 0;
+    }
+
+    /**
+     * @param profile        profile name
+     * @param javaVersion    major version of the converter JVM, 0 if unknown
+     * @param cacheDirectory directory of files shared by converter runs
+     * @return JVM options of the profile
+     */
+    public static List<String> getJvmArgs(String profile, int javaVersion, Path cacheDirectory) {
+        List<String> args = new ArrayList<>();
+        if (NONE.equals(profile)) {
+            return args;
+        }
+        if (!SHORT_LIVED.equals(profile)) {
+            throw new IllegalArgumentException("Unknown converter JVM profile " + profile
+                    + ", expected " + SHORT_LIVED + " or " + NONE);
+        }
+        args.add("-XX:TieredStopAtLevel=1");
+        args.add("-XX:+UseSerialGC");
+        args.add("-Xms64m");
+        args.add("-Xmx512m");
+        args.add("-XX:-UsePerfData");
+        if (javaVersion >= 19) {
+            args.add("-XX:+AutoCreateSharedArchive");
+            args.add("-XX:SharedArchiveFile=" + cacheDirectory.resolve("converter-java" + javaVersion + ".jsa"));
+        }
+        return args;
+    }
+}
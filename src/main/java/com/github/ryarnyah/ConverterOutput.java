@@ -0,0 +1,145 @@
+package com.github.ryarnyah;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Collect the output of a converter run.
+ * <p>
+ * Process pump threads only enqueue lines; a dedicated thread writes the full transcript to a file,
+ * parses diagnostics and forwards them to the plugin log.
+ */
+public class ConverterOutput implements AutoCloseable {
+    private static final Line END = new Line(false, null);
+
+    private final String name;
+    private final String packageName;
+    private final Path transcript;
+    private final boolean verbose;
+    private final Log log;
+    private final BlockingQueue<Line> lines = new LinkedBlockingQueue<>();
+    private final List<ConverterDiagnostic> diagnostics = Collections.synchronizedList(new ArrayList<>());
+    private final Thread drainer;
+    private volatile IOException failure;
+
+    /**
+     * A plexus-util StreamConsumer for converter standard output
+     */
+    private final StreamConsumer out = line -> lines.add(new Line(false, line));
+
+    /**
+     * A plexus-util StreamConsumer for converter error output
+     */
+    private final StreamConsumer err = line -> lines.add(new Line(true, line));
+
+    public ConverterOutput(String name, String packageName, Path transcript, boolean verbose, Log log)
+            throws IOException {
+        this.name = name;
+        this.packageName = packageName;
+        this.transcript = transcript;
+        this.verbose = verbose;
+        this.log = log;
+        Files.createDirectories(transcript.getParent());
+        BufferedWriter writer = Files.newBufferedWriter(transcript, StandardCharsets.UTF_8);
+        this.drainer = new Thread(() -> drain(writer), "javacard-converter-output-" + name);
+        this.drainer.setDaemon(true);
+        this.drainer.start();
+    }
+
+    public StreamConsumer getOut() {
+        return out;
+    }
+
+    public StreamConsumer getErr() {
+        return err;
+    }
+
+    public Path getTranscript() {
+        return transcript;
+    }
+
+    public List<ConverterDiagnostic> getDiagnostics() {
+        return diagnostics;
+    }
+
+    private void drain(BufferedWriter writer) {
+        try (BufferedWriter w = writer) {
+            while (true) {
+                Line line = lines.take();
+                if (line == END) {
+                    break;
+                }
+                w.write(line.text);
+                w.newLine();
+                handle(line);
+            }
+        } catch (IOException e) {
+            failure = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(Line line) {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(line.text, packageName);
+        if (diagnostic != null) {
+            diagnostics.add(diagnostic);
+            if (diagnostic.getSeverity() == ConverterDiagnostic.Severity.ERROR) {
+                log.error(name + ": " + diagnostic);
+            } else {
+                log.warn(name + ": " + diagnostic);
+            }
+        } else if (verbose) {
+            if (line.error) {
+                log.error(line.text);
+            } else {
+                log.info(line.text);
+            }
+        } else {
+            log.debug(line.text);
+        }
+    }
+
+    public long count(ConverterDiagnostic.Severity severity) {
+        synchronized (diagnostics) {
+            return diagnostics.stream().filter(d -> d.getSeverity() == severity).count();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.add(END);
+        try {
+            drainer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing " + transcript, e);
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        log.info(name + ": " + count(ConverterDiagnostic.Severity.ERROR) + " error(s), "
+                + count(ConverterDiagnostic.Severity.WARNING) + " warning(s), transcript in " + transcript);
+    }
+
+    private static class Line {
+        private final boolean error;
+        private final String text;
+
+        private Line(boolean error, String text) {
+            this.error = error;
+            this.text = text;
+        }
+    }
+}
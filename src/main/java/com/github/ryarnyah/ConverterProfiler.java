@@ -0,0 +1,222 @@
+package com.github.ryarnyah;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Java Flight Recorder support for converter runs.
+ * <p>
+ * The forked converter and the plugin itself are recorded with the same settings, so both recordings
+ * can be summarized the same way to tell converter slowness apart from plugin overhead.
+ */
+public class ConverterProfiler {
+    private static final int HOT_METHODS = 10;
+
+    private static final String SETTINGS = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<configuration version=\"2.0\" label=\"javacard-converter\">\n"
+            + "  <event name=\"jdk.ExecutionSample\">\n"
+            + "    <setting name=\"enabled\">true</setting>\n"
+            + "    <setting name=\"period\">10 ms</setting>\n"
+            + "  </event>\n"
+            + "  <event name=\"jdk.GarbageCollection\">\n"
+            + "    <setting name=\"enabled\">true</setting>\n"
+            + "    <setting name=\"threshold\">0 ms</setting>\n"
+            + "  </event>\n"
+            + "  <event name=\"jdk.ClassLoad\">\n"
+            + "    <setting name=\"enabled\">true</setting>\n"
+            + "    <setting name=\"stackTrace\">false</setting>\n"
+            + "    <setting name=\"threshold\">0 ms</setting>\n"
+            + "  </event>\n"
+            + "</configuration>\n";
+
+    private ConverterProfiler() {
+    }
+
+    /**
+     * Write the recording settings shared by forked and in-process recordings.
+     *
+     * @param directory report directory
+     * @return the settings file
+     */
+    public static Path writeSettings(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        Path settings = directory.resolve("converter.jfc");
+        Files.write(settings, SETTINGS.getBytes(StandardCharsets.UTF_8));
+        return settings;
+    }
+
+    /**
+     * JVM argument starting a recording dumped to the given file when the JVM exits.
+     * <p>
+     * Recording options are separated by commas: paths containing a comma are rejected.
+     */
+    public static String getJvmArgument(Path recording, Path settings) {
+        for (Path path : new Path[]{recording, settings}) {
+            if (path.toString().indexOf(',') >= 0) {
+                throw new IllegalArgumentException("Unable to record to or read settings from " + path
+                        + ": flight recorder options can not contain a comma");
+            }
+        }
+        return "-XX:StartFlightRecording=filename=" + recording + ",settings=" + settings + ",dumponexit=true";
+    }
+
+    /**
+     * Start an in-process recording. It captures the whole plugin JVM, including other conversions
+     * running at the same time.
+     */
+    public static Recording startRecording(Path settings) throws IOException {
+        try {
+            Recording recording = new Recording(Configuration.create(settings));
+            recording.start();
+            return recording;
+        } catch (ParseException e) {
+            throw new IOException("Invalid recording settings " + settings, e);
+        }
+    }
+
+    /**
+     * Stop an in-process recording and save it.
+     */
+    public static void stopRecording(Recording recording, Path destination) throws IOException {
+        try (Recording r = recording) {
+            r.stop();
+            r.dump(destination);
+        }
+    }
+
+    /**
+     * Summarize recordings into a text file.
+     *
+     * @param summary    summary file
+     * @param recordings recordings by section title
+     */
+    public static void writeSummary(Path summary, Map<String, Path> recordings) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Path> recording : recordings.entrySet()) {
+            if (!Files.exists(recording.getValue())) {
+                continue;
+            }
+            builder.append("== ").append(recording.getKey())
+                    .append(" (").append(recording.getValue().getFileName()).append(")\n");
+            builder.append(summarize(recording.getValue())).append('\n');
+        }
+        Files.write(summary, builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Summarize GC time, class loading time and hot methods of a recording.
+     */
+    public static String summarize(Path recording) throws IOException {
+        Instant start = null;
+        Instant end = null;
+        Duration gcTime = Duration.ZERO;
+        int gcCount = 0;
+        Map<Long, List<Instant[]>> classLoads = new HashMap<>();
+        int classCount = 0;
+        int samples = 0;
+        Map<String, Integer> hotMethods = new HashMap<>();
+
+        try (RecordingFile file = new RecordingFile(recording)) {
+            while (file.hasMoreEvents()) {
+                RecordedEvent event = file.readEvent();
+                if (start == null || event.getStartTime().isBefore(start)) {
+                    start = event.getStartTime();
+                }
+                if (end == null || event.getEndTime().isAfter(end)) {
+                    end = event.getEndTime();
+                }
+                switch (event.getEventType().getName()) {
+                    case "jdk.GarbageCollection":
+                        gcTime = gcTime.plus(event.getDuration());
+                        gcCount++;
+                        break;
+                    case "jdk.ClassLoad":
+                        long thread = event.getThread() != null ? event.getThread().getJavaThreadId() : -1;
+                        classLoads.computeIfAbsent(thread, t -> new ArrayList<>())
+                                .add(new Instant[]{event.getStartTime(), event.getEndTime()});
+                        classCount++;
+                        break;
+                    case "jdk.ExecutionSample":
+                        if (event.getStackTrace() != null && !event.getStackTrace().getFrames().isEmpty()) {
+                            RecordedFrame frame = event.getStackTrace().getFrames().get(0);
+                            RecordedMethod method = frame.getMethod();
+                            hotMethods.merge(method.getType().getName() + "." + method.getName(), 1, Integer::sum);
+                            samples++;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+
+        StringBuilder builder = new StringBuilder();
+        if (start != null) {
+            builder.append("Recorded: ").append(Duration.between(start, end).toMillis()).append(" ms\n");
+        }
+        builder.append("GC: ").append(gcTime.toMillis()).append(" ms in ").append(gcCount).append(" collection(s)\n");
+        Duration classLoadingTime = Duration.ZERO;
+        for (List<Instant[]> loads : classLoads.values()) {
+            classLoadingTime = classLoadingTime.plus(outermost(loads));
+        }
+        builder.append("Class loading: ").append(classLoadingTime.toMillis()).append(" ms for ")
+                .append(classCount).append(" class(es)\n");
+        builder.append("Hot methods (").append(samples).append(" sample(s)):\n");
+        List<Map.Entry<String, Integer>> top = hotMethods.entrySet().stream()
+                .sorted(Map.Entry.<String, Integer>comparingByValue().reversed())
+                .limit(HOT_METHODS)
+                .collect(Collectors.toList());
+        for (Map.Entry<String, Integer> method : top) {
+            builder.append(String.format("  %5.1f%% %s%n", 100.0 * method.getValue() / samples, method.getKey()));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Time covered by the class loads of a thread. A load triggered while loading another class lies within
+     * the outer load: only outermost loads are counted.
+     *
+     * @param loads start and end of each load
+     */
+    private static Duration outermost(List<Instant[]> loads) {
+        loads.sort(Comparator.comparing((Instant[] load) -> load[0]));
+        Duration total = Duration.ZERO;
+        Instant start = null;
+        Instant end = null;
+        for (Instant[] load : loads) {
+            if (end != null && !load[0].isAfter(end)) {
+                if (load[1].isAfter(end)) {
+                    end = load[1];
+                }
+                continue;
+            }
+            if (end != null) {
+                total = total.plus(Duration.between(start, end));
+            }
+            start = load[0];
+            end = load[1];
+        }
+        if (end != null) {
+            total = total.plus(Duration.between(start, end));
+        }
+        return total;
+    }
+}
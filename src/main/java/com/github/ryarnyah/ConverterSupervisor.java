@@ -0,0 +1,303 @@
+package com.github.ryarnyah;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineTimeOutException;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.codehaus.plexus.util.cli.StreamConsumer;
+import org.codehaus.plexus.util.cli.StreamPumper;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Run conversions and keep track of every forked converter process.
+ * <p>
+ * The first failing conversion cancels all the others: queued conversions never start and running
+ * converter process trees are killed. A converter that exceeds its timeout gets a thread dump before
+ * being killed. A failure is only reported once every cancelled conversion has stopped, so that nothing
+ * is written to the build directory after the build failed.
+ */
+public class ConverterSupervisor implements AutoCloseable {
+    private static final int THREAD_DUMP_TIMEOUT_IN_SECONDS = 10;
+    private static final int TERMINATION_TIMEOUT_IN_SECONDS = 60;
+
+    private final ExecutorService executor;
+    private final CompletionService<Void> completion;
+    private final List<Future<Void>> conversions = new ArrayList<>();
+    private final Set<Process> processes = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final Path jcmd;
+    private final Log log;
+
+    /**
+     * @param threads number of conversions running at the same time
+     * @param jcmd    jcmd executable used for thread dumps, may not exist
+     * @param log     plugin log
+     */
+    public ConverterSupervisor(int threads, Path jcmd, Log log) {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.completion = new ExecutorCompletionService<>(executor);
+        this.jcmd = jcmd;
+        this.log = log;
+    }
+
+    public void submit(Callable<Void> conversion) {
+        conversions.add(completion.submit(conversion));
+    }
+
+    /**
+     * Wait for all submitted conversions.
+     *
+     * @throws MojoExecutionException with the first failure, once all other conversions are cancelled and stopped
+     */
+    public void await() throws MojoExecutionException {
+        Throwable failure = null;
+        for (int i = 0; i < conversions.size(); i++) {
+            try {
+                completion.take().get();
+            } catch (CancellationException e) {
+                // Cancelled after a failure
+            } catch (ExecutionException e) {
+                if (failure == null && !(e.getCause() instanceof CancellationException)) {
+                    failure = e.getCause();
+                    cancel();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                cancel();
+                throw new MojoExecutionException("Interrupted while converting", e);
+            }
+        }
+        if (failure != null) {
+            // Cancelled futures are done as soon as they are cancelled, not when their thread stops
+            try {
+                shutdown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MojoExecutionException("Interrupted while cancelling conversions", e);
+            }
+        }
+        if (failure instanceof MojoExecutionException) {
+            throw (MojoExecutionException) failure;
+        }
+        if (failure != null) {
+            throw new MojoExecutionException("Unable to convert cap", failure);
+        }
+    }
+
+    /**
+     * Cancel queued and running conversions.
+     */
+    public void cancel() {
+        if (cancelled.compareAndSet(false, true)) {
+            long running = conversions.stream().filter(f -> !f.isDone()).count();
+            if (running > 0) {
+                log.warn("Cancelling " + running + " remaining conversion(s)");
+            }
+            for (Future<Void> conversion : conversions) {
+                conversion.cancel(true);
+            }
+            for (Process process : processes) {
+                kill(process);
+            }
+        }
+    }
+
+    /**
+     * Run a converter process until it exits, fails or times out.
+     *
+     * @param commandline      converter command line
+     * @param out              consumer of the converter standard output
+     * @param err              consumer of the converter error output
+     * @param timeoutInSeconds maximum run time, 0 or less to wait forever
+     * @param threadDump       file receiving thread dumps of a hung converter
+     * @return the exit code and timings of the converter
+     */
+    public Result execute(Commandline commandline,
+                          StreamConsumer out,
+                          StreamConsumer err,
+                          int timeoutInSeconds,
+                          Path threadDump) throws CommandLineException, InterruptedException {
+        if (cancelled.get()) {
+            throw new CancellationException("Conversion cancelled");
+        }
+        long start = System.nanoTime();
+        AtomicLong firstLine = new AtomicLong();
+        Process process = commandline.execute();
+        processes.add(process);
+        StreamPumper outPumper = new StreamPumper(process.getInputStream(), line -> {
+            firstLine.compareAndSet(0, System.nanoTime());
+            out.consumeLine(line);
+        });
+        StreamPumper errPumper = new StreamPumper(process.getErrorStream(), line -> {
+            firstLine.compareAndSet(0, System.nanoTime());
+            err.consumeLine(line);
+        });
+        try {
+            // Close the gap between the cancel check and the registration
+            if (cancelled.get()) {
+                kill(process);
+                throw new CancellationException("Conversion cancelled");
+            }
+            process.getOutputStream().close();
+            outPumper.start();
+            errPumper.start();
+
+            if (timeoutInSeconds > 0 && !process.waitFor(timeoutInSeconds, TimeUnit.SECONDS)) {
+                List<ProcessHandle> tree = tree(process);
+                dumpThreads(tree, threadDump);
+                kill(tree);
+                throw new CommandLineTimeOutException("Converter timed out after " + timeoutInSeconds
+                        + " seconds, thread dump in " + threadDump);
+            }
+            int exitValue = process.waitFor();
+            long end = System.nanoTime();
+            outPumper.waitUntilDone();
+            errPumper.waitUntilDone();
+            long startup = firstLine.get() != 0 ? firstLine.get() - start : end - start;
+            return new Result(exitValue, startup, end - start);
+        } catch (IOException e) {
+            kill(process);
+            throw new CommandLineException("Unable to close converter input", e);
+        } catch (InterruptedException e) {
+            kill(process);
+            throw e;
+        } finally {
+            processes.remove(process);
+            outPumper.close();
+            errPumper.close();
+        }
+    }
+
+    /**
+     * Dump the threads of the JVMs of a process tree. Other processes are skipped: jcmd falls back to SIGQUIT,
+     * which would kill the shell running the converter.
+     */
+    private void dumpThreads(List<ProcessHandle> tree, Path threadDump) {
+        if (!Files.isExecutable(jcmd)) {
+            log.warn("Unable to find " + jcmd + ", no thread dump for hung converter");
+            return;
+        }
+        List<ProcessHandle> jvms = tree.stream().filter(ConverterSupervisor::isJvm).collect(Collectors.toList());
+        if (jvms.isEmpty()) {
+            log.warn("Unable to find the converter JVM, no thread dump for hung converter");
+            return;
+        }
+        try {
+            Files.createDirectories(threadDump.getParent());
+            Files.deleteIfExists(threadDump);
+            for (ProcessHandle handle : jvms) {
+                Process dump = new ProcessBuilder(jcmd.toString(), Long.toString(handle.pid()), "Thread.print")
+                        .redirectErrorStream(true)
+                        .redirectOutput(ProcessBuilder.Redirect.appendTo(threadDump.toFile()))
+                        .start();
+                if (!dump.waitFor(THREAD_DUMP_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+                    dump.destroyForcibly();
+                }
+            }
+            log.warn("Thread dump of hung converter written to " + threadDump);
+        } catch (IOException e) {
+            log.warn("Unable to dump converter threads", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean isJvm(ProcessHandle handle) {
+        return handle.info().command()
+                .map(command -> Paths.get(command).getFileName().toString())
+                .filter(name -> "java".equals(name) || "java.exe".equals(name))
+                .isPresent();
+    }
+
+    /**
+     * A process and its descendants. Collect them before anything dies: descendants are reparented once their
+     * parent dies and are no longer found from it.
+     */
+    private static List<ProcessHandle> tree(Process process) {
+        List<ProcessHandle> tree = new ArrayList<>();
+        tree.add(process.toHandle());
+        tree.addAll(process.descendants().collect(Collectors.toList()));
+        return tree;
+    }
+
+    private static void kill(Process process) {
+        kill(tree(process));
+    }
+
+    private static void kill(List<ProcessHandle> tree) {
+        for (ProcessHandle handle : tree) {
+            handle.destroyForcibly();
+        }
+    }
+
+    private void shutdown() throws InterruptedException {
+        executor.shutdownNow();
+        if (!executor.awaitTermination(TERMINATION_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+            log.warn("Conversions still running " + TERMINATION_TIMEOUT_IN_SECONDS + " seconds after cancellation");
+        }
+    }
+
+    @Override
+    public void close() {
+        cancel();
+        try {
+            shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Outcome of a converter process.
+     */
+    public static class Result {
+        private final int exitValue;
+        private final long startupNanos;
+        private final long runNanos;
+
+        private Result(int exitValue, long startupNanos, long runNanos) {
+            this.exitValue = exitValue;
+            this.startupNanos = startupNanos;
+            this.runNanos = runNanos;
+        }
+
+        public int getExitValue() {
+            return exitValue;
+        }
+
+        /**
+         * Time between the process start and its first output line.
+         */
+        public long getStartupNanos() {
+            return startupNanos;
+        }
+
+        /**
+         * Time between the process start and its exit.
+         */
+        public long getRunNanos() {
+            return runNanos;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.github.ryarnyah;
 
+import java.util.List;
 import java.util.Objects;
 
 public class JavacardApplet {
@@ -8,6 +9,11 @@ public class JavacardApplet {
     private String packageAID;
     private String appletAID;
     private String outputName;
+    private Integer timeoutInSeconds;
+    private List<String> outputFormats;
+    private String classifier;
+    private String jvmProfile;
+    private List<String> jvmArgs;
 
     public String getOutputName() {
         return outputName;
@@ -17,6 +23,46 @@ public class JavacardApplet {
         this.outputName = outputName;
     }
 
+    public String getJvmProfile() {
+        return jvmProfile;
+    }
+
+    public void setJvmProfile(String jvmProfile) {
+        this.jvmProfile = jvmProfile;
+    }
+
+    public List<String> getJvmArgs() {
+        return jvmArgs;
+    }
+
+    public void setJvmArgs(List<String> jvmArgs) {
+        this.jvmArgs = jvmArgs;
+    }
+
+    public List<String> getOutputFormats() {
+        return outputFormats;
+    }
+
+    public void setOutputFormats(List<String> outputFormats) {
+        this.outputFormats = outputFormats;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public void setClassifier(String classifier) {
+        this.classifier = classifier;
+    }
+
+    public Integer getTimeoutInSeconds() {
+        return timeoutInSeconds;
+    }
+
+    public void setTimeoutInSeconds(Integer timeoutInSeconds) {
+        this.timeoutInSeconds = timeoutInSeconds;
+    }
+
     public String getPackageName() {
         return packageName;
     }
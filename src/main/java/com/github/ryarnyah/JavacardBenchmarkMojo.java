@@ -0,0 +1,401 @@
+package com.github.ryarnyah;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measure the cost of each instruction of the configured applets in jCardSim and compare it to a baseline.
+ * <p>
+ * Every workload script is replayed once on a fresh simulator in its own class loader, where the applet
+ * classes are instrumented (see {@link AppletInstrumenter}) to count, for each script and INS byte, executed
+ * bytecodes, transaction commits, EEPROM writes and transient array allocations. These counts do not depend
+ * on the build machine or the JIT, one run is enough.
+ * <p>
+ * For information, the script is then replayed warmup times then iterations times on the original applet
+ * classes, sharing one class loader so that the JIT warms up, to record the median CPU time and latency.
+ */
+@Mojo(
+        name = "benchmark",
+        defaultPhase = LifecyclePhase.VERIFY,
+        threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.TEST)
+public class JavacardBenchmarkMojo extends AbstractMojo {
+    private static final String BYTECODES = "bytecodes";
+    private static final String COMMITS = "commits";
+    private static final String EEPROM_WRITES = "eepromWrites";
+    private static final String TRANSIENT_ARRAYS = "transientArrays";
+    private static final String CPU_NANOS = "cpuNanos";
+    private static final String LATENCY_NANOS = "latencyNanos";
+    /**
+     * Counters by index in samples, in {@link AppletCounters} order.
+     */
+    private static final String[] COUNTERS = {BYTECODES, COMMITS, EEPROM_WRITES, TRANSIENT_ARRAYS};
+    /**
+     * Timings by index in samples.
+     */
+    private static final String[] TIMINGS = {CPU_NANOS, LATENCY_NANOS};
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+    @Parameter(defaultValue = "${plugin.artifacts}", readonly = true, required = true)
+    private List<Artifact> pluginArtifacts;
+    @Parameter(property = "applets")
+    private List<JavacardApplet> applets;
+    @Parameter(property = "maven.javacard.benchmarkScripts", defaultValue = "${project.basedir}/src/test/apdu-benchmark")
+    private File workloadDirectory;
+    @Parameter(property = "maven.javacard.benchmarkWarmup", defaultValue = "10")
+    private int warmup;
+    /**
+     * Measured runs of each script for CPU time and latency, 0 to only count.
+     */
+    @Parameter(property = "maven.javacard.benchmarkIterations", defaultValue = "30")
+    private int iterations;
+    @Parameter(property = "maven.javacard.benchmarkBaseline",
+            defaultValue = "${project.basedir}/src/test/javacard/benchmark-baseline.properties")
+    private File baseline;
+    /**
+     * Maximum increase over the baseline, in percent.
+     */
+    @Parameter(property = "maven.javacard.benchmarkThreshold", defaultValue = "10")
+    private double threshold;
+    /**
+     * Increase over the baseline never failing the build, in metric units. A zero baseline fails the build
+     * once the increase is above it.
+     */
+    @Parameter(property = "maven.javacard.benchmarkTolerance", defaultValue = "0")
+    private long tolerance;
+    /**
+     * Metrics failing the build on regression. CPU time and latency depend on the build machine, counters
+     * do not.
+     */
+    @Parameter(property = "maven.javacard.benchmarkMetrics",
+            defaultValue = BYTECODES + "," + COMMITS + "," + EEPROM_WRITES + "," + TRANSIENT_ARRAYS)
+    private List<String> metrics;
+    @Parameter(property = "maven.javacard.updateBaseline", defaultValue = "false")
+    private boolean updateBaseline;
+    @Parameter(property = "maven.javacard.benchmark.skip", defaultValue = "false")
+    private boolean skip;
+
+    public void execute()
+            throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Benchmark is skipped.");
+            return;
+        }
+        for (JavacardApplet applet : applets) {
+            if (StringUtils.isEmpty(applet.getAppletAID())) {
+                throw new MojoFailureException("AppletAID is mandatory for applet " + applet);
+            }
+            if (StringUtils.isEmpty(applet.getAppletClass())) {
+                throw new MojoFailureException("AppletClass is mandatory for applet " + applet);
+            }
+            if (StringUtils.isEmpty(applet.getPackageName())) {
+                throw new MojoFailureException("PackageName is mandatory for applet " + applet);
+            }
+        }
+        List<ApduScript> workload = findWorkload();
+        if (workload.isEmpty()) {
+            getLog().info("No benchmark script in " + workloadDirectory);
+            return;
+        }
+        List<String> classpath;
+        try {
+            classpath = project.getTestClasspathElements();
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException("Unable to resolve test classpath", e);
+        }
+
+        List<String> packages = applets.stream().map(JavacardApplet::getPackageName).distinct()
+                .collect(Collectors.toList());
+        Map<String, List<long[]>> counters = new TreeMap<>();
+        Map<String, List<long[]>> timings = new TreeMap<>();
+        for (ApduScript script : workload) {
+            try (URLClassLoader classLoader = JavacardSimulator.createClassLoader(pluginArtifacts, classpath, packages)) {
+                run(script, classLoader, counters, null);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to close simulator class loader", e);
+            }
+            if (iterations <= 0) {
+                continue;
+            }
+            try (URLClassLoader classLoader = JavacardSimulator.createClassLoader(pluginArtifacts, classpath)) {
+                for (int i = 0; i < warmup + iterations; i++) {
+                    run(script, classLoader, null, i < warmup ? null : timings);
+                }
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to close simulator class loader", e);
+            }
+        }
+
+        // An INS sent several times by a script has several samples
+        Map<String, Long> results = new TreeMap<>();
+        addMedians(results, counters, COUNTERS);
+        addMedians(results, timings, TIMINGS);
+        Path report = Paths.get(project.getBuild().getDirectory(), "javacard-benchmark", "benchmark.properties");
+        write(report, results);
+        getLog().info("Benchmark results written to " + report);
+
+        if (updateBaseline) {
+            write(baseline.toPath(), results);
+            getLog().info("Baseline " + baseline + " updated");
+            return;
+        }
+        compare(results);
+    }
+
+    private List<ApduScript> findWorkload() throws MojoExecutionException {
+        if (!workloadDirectory.isDirectory()) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.walk(workloadDirectory.toPath())) {
+            List<ApduScript> scripts = new ArrayList<>();
+            for (Path path : paths.filter(p -> p.toString().endsWith(".apdu")).sorted().collect(Collectors.toList())) {
+                scripts.add(ApduScript.parse(path));
+            }
+            return scripts;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read benchmark scripts", e);
+        }
+    }
+
+    /**
+     * Replay a script on a fresh simulator. Static state of the applet classes is shared with the other runs
+     * in the same class loader.
+     *
+     * @param counters receives the {@link #COUNTERS} by script and INS, null to not count
+     * @param timings  receives the {@link #TIMINGS} by script and INS, null to not time
+     */
+    private void run(ApduScript script, ClassLoader classLoader, Map<String, List<long[]>> counters,
+                     Map<String, List<long[]>> timings) throws MojoExecutionException, MojoFailureException {
+        String name = workloadDirectory.toPath().relativize(script.getPath()).toString()
+                .replace(File.separatorChar, '/').replaceAll("\\.apdu$", "");
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try {
+            thread.setContextClassLoader(classLoader);
+            JavacardSimulator simulator = new JavacardSimulator(classLoader);
+            for (JavacardApplet applet : applets) {
+                simulator.install(applet.getAppletAID(), applet.getPackageName() + "." + applet.getAppletClass());
+            }
+            for (ApduScript.Command command : script.getCommands()) {
+                long[] before = counters == null ? null : simulator.getCounters();
+                long cpu = threadMXBean.getCurrentThreadCpuTime();
+                long start = System.nanoTime();
+                byte[] response = simulator.transmit(command.getApdu());
+                long latency = System.nanoTime() - start;
+                cpu = threadMXBean.getCurrentThreadCpuTime() - cpu;
+
+                if (!command.matches(response)) {
+                    throw new MojoFailureException(script + ":" + command.getLine() + ": expected "
+                            + command.getExpected() + " but got " + Hex.encodeHexString(response, false));
+                }
+                String key = name + "." + String.format("%02X", command.getIns());
+                if (counters != null) {
+                    long[] sample = simulator.getCounters();
+                    for (int i = 0; i < sample.length; i++) {
+                        sample[i] -= before[i];
+                    }
+                    counters.computeIfAbsent(key, k -> new ArrayList<>()).add(sample);
+                }
+                if (timings != null) {
+                    timings.computeIfAbsent(key, k -> new ArrayList<>()).add(new long[]{cpu, latency});
+                }
+            }
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private static void addMedians(Map<String, Long> results, Map<String, List<long[]>> samples, String[] metrics) {
+        for (Map.Entry<String, List<long[]>> ins : samples.entrySet()) {
+            for (int metric = 0; metric < metrics.length; metric++) {
+                results.put(ins.getKey() + "." + metrics[metric], median(ins.getValue(), metric));
+            }
+        }
+    }
+
+    private static long median(List<long[]> samples, int metric) {
+        long[] values = samples.stream().mapToLong(s -> s[metric]).toArray();
+        Arrays.sort(values);
+        return values[values.length / 2];
+    }
+
+    private void compare(Map<String, Long> results) throws MojoExecutionException, MojoFailureException {
+        if (!baseline.isFile()) {
+            getLog().warn("No benchmark baseline " + baseline + ", run with -Dmaven.javacard.updateBaseline");
+            return;
+        }
+        Properties expected = new Properties();
+        try (InputStream is = Files.newInputStream(baseline.toPath())) {
+            expected.load(is);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read " + baseline, e);
+        }
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Long> result : results.entrySet()) {
+            String key = result.getKey();
+            String metric = key.substring(key.lastIndexOf('.') + 1);
+            String value = expected.getProperty(key);
+            if (value == null) {
+                getLog().info(key + " = " + result.getValue() + " (new)");
+                continue;
+            }
+            long reference = Long.parseLong(value.trim());
+            long increase = result.getValue() - reference;
+            String line;
+            boolean regression;
+            if (reference == 0) {
+                line = String.format("%s = %d (baseline 0, %+d)", key, result.getValue(), increase);
+                regression = increase > tolerance;
+            } else {
+                double change = 100.0 * increase / reference;
+                line = String.format("%s = %d (baseline %d, %+.1f%%)", key, result.getValue(), reference, change);
+                regression = change > threshold && increase > tolerance;
+            }
+            if (regression && metrics.contains(metric)) {
+                getLog().error(line);
+                regressions.add(key);
+            } else {
+                getLog().info(line);
+            }
+        }
+        if (!regressions.isEmpty()) {
+            throw new MojoFailureException(regressions.size() + " benchmark regression(s) above "
+                    + threshold + "% and " + tolerance + ": " + regressions);
+        }
+    }
+
+    private static void write(Path path, Map<String, Long> results) throws MojoExecutionException {
+        // Sorted and without date, unlike Properties.store, to keep baselines diffable
+        StringBuilder builder = new StringBuilder();
+        for (Map.Entry<String, Long> result : results.entrySet()) {
+            builder.append(result.getKey()).append('=').append(result.getValue()).append('\n');
+        }
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            Files.write(path, builder.toString().getBytes(StandardCharsets.ISO_8859_1));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + path, e);
+        }
+    }
+
+    public MavenProject getProject() {
+        return project;
+    }
+
+    public void setProject(MavenProject project) {
+        this.project = project;
+    }
+
+    public List<JavacardApplet> getApplets() {
+        return applets;
+    }
+
+    public void setApplets(List<JavacardApplet> applets) {
+        this.applets = applets;
+    }
+
+    public File getWorkloadDirectory() {
+        return workloadDirectory;
+    }
+
+    public void setWorkloadDirectory(File workloadDirectory) {
+        this.workloadDirectory = workloadDirectory;
+    }
+
+    public int getWarmup() {
+        return warmup;
+    }
+
+    public void setWarmup(int warmup) {
+        this.warmup = warmup;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public File getBaseline() {
+        return baseline;
+    }
+
+    public void setBaseline(File baseline) {
+        this.baseline = baseline;
+    }
+
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    public long getTolerance() {
+        return tolerance;
+    }
+
+    public void setTolerance(long tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public List<String> getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(List<String> metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isUpdateBaseline() {
+        return updateBaseline;
+    }
+
+    public void setUpdateBaseline(boolean updateBaseline) {
+        this.updateBaseline = updateBaseline;
+    }
+
+    public boolean isSkip() {
+        return skip;
+    }
+
+    public void setSkip(boolean skip) {
+        this.skip = skip;
+    }
+}
@@ -7,36 +7,49 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.project.MavenProject;
 import org.codehaus.plexus.util.cli.Arg;
-import org.codehaus.plexus.util.cli.CommandLineUtils;
 import org.codehaus.plexus.util.cli.Commandline;
 import org.codehaus.plexus.util.cli.StreamConsumer;
 
+import jdk.jfr.Recording;
+
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
 import java.util.ArrayList;
-import java.util.Enumeration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.StringJoiner;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 
 public class JavacardConverter {
 
+    public static final List<String> OUTPUT_FORMATS = Arrays.asList("CAP", "EXP", "JCA");
+
     private JavacardConverter() {
     }
 
-    public static void convertCAP(
+    /**
+     * Convert an applet package and publish the requested outputs to the build directory.
+     *
+     * @return published files
+     */
+    public static List<Path> convertCAP(
             String javaExecutable,
+            ConverterSupervisor supervisor,
             int timeoutInSeconds,
             MavenProject project,
             StreamConsumer out,
@@ -44,6 +57,9 @@ public class JavacardConverter {
             JavacardJCDK jcdk,
             JavacardApplet applet,
             boolean debug,
+            Path profileSettings,
+            Instant outputTimestamp,
+            List<String> jvmArgs,
             Log log) throws Exception {
         Commandline commandline = new Commandline();
         commandline.addSystemEnvironment();
@@ -51,7 +67,17 @@ public class JavacardConverter {
         List<String> sysArgs = new ArrayList<>();
         List<String> appArgs = new ArrayList<>();
 
+        List<String> jvmOptions = new ArrayList<>(jvmArgs);
+        Path converterRecording = getReportFile(project, applet, "jfr");
+        if (profileSettings != null) {
+            Files.createDirectories(converterRecording.getParent());
+            jvmOptions.add(ConverterProfiler.getJvmArgument(converterRecording, profileSettings));
+        }
+
         sysArgs.add(javaExecutable);
+        for (String jvmOption : jvmOptions) {
+            sysArgs.add("'" + jvmOption + "'");
+        }
 
         StringJoiner classPathJoiner = new StringJoiner(File.pathSeparator);
         for (Path jar : jcdk.getToolJars()) {
@@ -80,14 +106,26 @@ public class JavacardConverter {
         // Add targetSDK export files
         expStringBuilder.add(jcdk.getExportDir());
         List<File> exps = new ArrayList<>();
+        Path exportCache = Paths.get(project.getBuild().getDirectory(), "javacard-exports");
         try {
             // imports
             List<Artifact> libraries = getConverterDependencies(project);
             for (Artifact library : libraries) {
-                File path = library.getFile();
+                List<JavacardExport> libraryExports = JavacardExportIndex.read(library.getFile());
+                if (libraryExports.isEmpty()) {
+                    continue;
+                }
+                log.debug("Using exports " + libraryExports + " of " + library);
+                if (libraryExports.stream().allMatch(export -> export.getDigest() != null)) {
+                    // Indexed library, export files are shared by content
+                    for (JavacardExport export : libraryExports) {
+                        expStringBuilder.add(getCachedExport(exportCache, library.getFile(), export).toString());
+                    }
+                    continue;
+                }
                 Path tmp = Files.createTempDirectory(library.getGroupId() + "-" + library.getArtifactId());
-                extractExps(path, tmp.toFile());
                 exps.add(tmp.toFile());
+                extractExps(library.getFile(), libraryExports, tmp.toFile());
             }
             for (File imp : exps) {
                 expStringBuilder.add(imp.toString());
@@ -100,6 +138,14 @@ public class JavacardConverter {
             appArgs.add("-useproxyclass");
             appArgs.add("-exportpath '" + expStringBuilder + "'");
 
+            if (applet.getOutputFormats() != null && !applet.getOutputFormats().isEmpty()) {
+                StringJoiner outputs = new StringJoiner(" ", "-out ", "");
+                for (String format : applet.getOutputFormats()) {
+                    outputs.add(format.toUpperCase());
+                }
+                appArgs.add(outputs.toString());
+            }
+
             // always be a little verbose
             appArgs.add("-verbose");
             appArgs.add("-nobanner");
@@ -129,64 +175,150 @@ public class JavacardConverter {
                 arg.setLine(appArg);
             }
 
+            // Published files are hard links to the converter outputs: unlink them so that the converter
+            // writes new files instead of rewriting the published ones in place
+            Path appletFilesPath = Paths.get(appletOutputPath.toString(), applet.getPackageName().replace('.', '/'), "javacard");
+            deleteRecursively(appletFilesPath);
+
             log.debug("Execute " + commandline);
-            int exitValue = CommandLineUtils.executeCommandLine(
-                    commandline,
-                    out,
-                    err,
-                    timeoutInSeconds
-            );
-
-            if (exitValue != 0) {
+            Recording pluginRecording = null;
+            if (profileSettings != null) {
+                pluginRecording = ConverterProfiler.startRecording(profileSettings);
+            }
+            ConverterSupervisor.Result result;
+            try {
+                result = supervisor.execute(
+                        commandline,
+                        out,
+                        err,
+                        timeoutInSeconds,
+                        getReportFile(project, applet, "threads.txt")
+                );
+            } finally {
+                if (pluginRecording != null) {
+                    ConverterProfiler.stopRecording(pluginRecording, getReportFile(project, applet, "plugin.jfr"));
+                }
+            }
+            if (profileSettings != null) {
+                Map<String, Path> recordings = new LinkedHashMap<>();
+                recordings.put("Converter", converterRecording);
+                recordings.put("Plugin", getReportFile(project, applet, "plugin.jfr"));
+                Path summary = getReportFile(project, applet, "profile.txt");
+                ConverterProfiler.writeSummary(summary, recordings);
+                log.info("Profile of " + applet + " written to " + summary);
+            }
+
+            log.debug(applet + ": converter JVM started in " + result.getStartupNanos() / 1_000_000
+                    + " ms, ran " + result.getRunNanos() / 1_000_000 + " ms");
+            writeTimings(getReportFile(project, applet, "timings.properties"), jvmArgs, result);
+            if (result.getExitValue() != 0) {
                 throw new MojoFailureException("Unable to convert cap");
             }
-            // Move converted files to output directory
+            // Publish converted files to output directory
+            List<Path> published = new ArrayList<>();
             Path outputPath = Paths.get(project.getBuild().getDirectory());
-            Path appletFilesPath = Paths.get(appletOutputPath.toString(), applet.getPackageName().replace('.', '/'), "javacard");
             File[] appletFiles = appletFilesPath.toFile().listFiles();
             if (appletFiles == null) {
                 throw new MojoFailureException("Unable to access files in " + appletFilesPath);
             }
+            Arrays.sort(appletFiles);
             for (File appletFile : appletFiles) {
                 String fileName = FilenameUtils.getBaseName(appletFile.getName());
                 String ext = FilenameUtils.getExtension(appletFile.getName());
                 if (applet.getOutputName() != null) {
                     fileName = applet.getOutputName();
                 }
+                if (outputTimestamp != null && "cap".equalsIgnoreCase(ext)) {
+                    CapNormalizer.normalize(appletFile.toPath(), outputTimestamp);
+                }
                 Path outPath = Paths.get(outputPath.toString(), fileName + "." + ext);
-                log.info("Copying " + appletFile + " to " + outPath);
-                Files.copy(appletFile.toPath(), outPath, REPLACE_EXISTING);
+                String digest = OutputDigests.sha256(appletFile.toPath());
+                published.add(outPath);
+                if (OutputDigests.isUpToDate(outPath, digest)) {
+                    log.info(outPath + " is up to date");
+                    continue;
+                }
+                log.info("Publishing " + appletFile + " to " + outPath);
+                publish(appletFile.toPath(), outPath);
+                OutputDigests.write(outPath, digest);
             }
+            return published;
         } finally {
             // Delete temporary folders / files
             for (File exp : exps) {
-                Files.walkFileTree(exp.toPath(), new SimpleFileVisitor<>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file,
-                                                     @SuppressWarnings("unused") BasicFileAttributes attrs)
-                            throws IOException {
-                        Files.delete(file);
-                        return FileVisitResult.CONTINUE;
-                    }
-
-                    @Override
-                    public FileVisitResult postVisitDirectory(Path dir, IOException e)
-                            throws IOException {
-                        if (e == null) {
-                            Files.delete(dir);
-                            return FileVisitResult.CONTINUE;
-                        }
-                        // directory iteration failed
-                        throw e;
-                    }
-                });
+                deleteRecursively(exp.toPath());
             }
         }
     }
 
+    private static void writeTimings(Path file, List<String> jvmArgs, ConverterSupervisor.Result result)
+            throws IOException {
+        String timings = "jvmArgs=" + String.join(" ", jvmArgs) + "\n"
+                + "startupMillis=" + result.getStartupNanos() / 1_000_000 + "\n"
+                + "runMillis=" + result.getRunNanos() / 1_000_000 + "\n";
+        Files.createDirectories(file.getParent());
+        Files.write(file, timings.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Atomically replace the target by a hard link to the source, or by a copy when links are not supported.
+     * The source stays available for the export goal; it is deleted, never rewritten, before the next conversion.
+     */
+    private static void publish(Path source, Path target) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.deleteIfExists(tmp);
+        try {
+            Files.createLink(tmp, source);
+        } catch (UnsupportedOperationException | IOException e) {
+            Files.copy(source, tmp, REPLACE_EXISTING);
+        }
+        try {
+            Files.move(tmp, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             @SuppressWarnings("unused") BasicFileAttributes attrs)
+                    throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e)
+                    throws IOException {
+                if (e == null) {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+                // directory iteration failed
+                throw e;
+            }
+        });
+    }
+
+    /**
+     * Path of a per applet report file under target/javacard-converter.
+     */
+    public static Path getReportFile(MavenProject project, JavacardApplet applet, String extension) {
+        String name = applet.getOutputName() != null ? applet.getOutputName() : applet.getPackageName();
+        return Paths.get(project.getBuild().getDirectory(), "javacard-converter", name + "." + extension);
+    }
+
+    /**
+     * Direct and transitive dependencies which may contain export files.
+     */
     public static List<Artifact> getConverterDependencies(MavenProject project) {
         List<Artifact> deps = new ArrayList<>();
-        for (Artifact artifact : project.getDependencyArtifacts()) {
+        for (Artifact artifact : project.getArtifacts()) {
             if (!"test".equals(artifact.getScope())) {
                 deps.add(artifact);
             }
@@ -205,34 +337,66 @@ public class JavacardConverter {
         return hex.substring(0, hex.length() - 1);
     }
 
-    private static List<File> extractExps(File in, File out) throws IOException {
-        List<File> exps = new ArrayList<>();
-        try (JarFile jarfile = new JarFile(in)) {
-            Enumeration<JarEntry> entries = jarfile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                if (entry.getName().toLowerCase().endsWith(".exp")) {
-                    File f = new File(out, entry.getName());
-                    if (!f.exists()) {
-                        if (!f.getParentFile().mkdirs())
-                            throw new IOException("Failed to create folder: " + f.getParentFile());
-                        f = new File(out, entry.getName());
-                    }
-                    try (InputStream is = jarfile.getInputStream(entry);
-                         FileOutputStream fo = new java.io.FileOutputStream(f)) {
-                        byte[] buf = new byte[1024];
-                        while (true) {
-                            int r = is.read(buf);
-                            if (r == -1) {
-                                break;
-                            }
-                            fo.write(buf, 0, r);
-                        }
-                    }
-                    exps.add(f);
+    /**
+     * Extract an indexed export file once into a directory named after its digest.
+     *
+     * @return the export path entry of the export file
+     */
+    private static Path getCachedExport(Path cache, File in, JavacardExport export) throws IOException {
+        Path exportPath = cache.resolve(export.getDigest());
+        if (Files.isDirectory(exportPath)) {
+            return exportPath;
+        }
+        Files.createDirectories(cache);
+        Path tmp = Files.createTempDirectory(cache, export.getDigest());
+        try (JarFile jarfile = new JarFile(in, false)) {
+            JarEntry entry = jarfile.getJarEntry(export.getPath());
+            if (entry == null) {
+                throw new IOException("Missing export " + export.getPath() + " in " + in);
+            }
+            Path f = tmp.resolve(entry.getName()).normalize();
+            if (!f.startsWith(tmp)) {
+                throw new IOException("Invalid export path " + entry.getName() + " in " + in);
+            }
+            Files.createDirectories(f.getParent());
+            try (InputStream is = jarfile.getInputStream(entry)) {
+                Files.copy(is, f);
+            }
+            try (InputStream is = Files.newInputStream(f)) {
+                if (!export.getDigest().equalsIgnoreCase(JavacardExportIndex.sha256(is))) {
+                    throw new IOException("Digest mismatch for " + export.getPath() + " in " + in);
+                }
+            }
+            try {
+                Files.move(tmp, exportPath, ATOMIC_MOVE);
+            } catch (IOException e) {
+                if (!Files.isDirectory(exportPath)) {
+                    throw e;
+                }
+                // Extracted by a concurrent conversion
+            }
+        } finally {
+            deleteRecursively(tmp);
+        }
+        return exportPath;
+    }
+
+    private static void extractExps(File in, List<JavacardExport> exports, File out) throws IOException {
+        try (JarFile jarfile = new JarFile(in, false)) {
+            for (JavacardExport export : exports) {
+                JarEntry entry = jarfile.getJarEntry(export.getPath());
+                if (entry == null) {
+                    throw new IOException("Missing export " + export.getPath() + " in " + in);
+                }
+                Path f = out.toPath().resolve(entry.getName()).normalize();
+                if (!f.startsWith(out.toPath())) {
+                    throw new IOException("Invalid export path " + entry.getName() + " in " + in);
+                }
+                Files.createDirectories(f.getParent());
+                try (InputStream is = jarfile.getInputStream(entry)) {
+                    Files.copy(is, f, REPLACE_EXISTING);
                 }
             }
         }
-        return exps;
     }
 }
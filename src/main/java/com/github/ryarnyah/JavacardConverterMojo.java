@@ -1,5 +1,6 @@
 package com.github.ryarnyah;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
@@ -11,15 +12,23 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
 import org.apache.maven.toolchain.Toolchain;
 import org.apache.maven.toolchain.ToolchainManager;
-import org.codehaus.plexus.util.cli.StreamConsumer;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.reflect.Method;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.github.ryarnyah.ReflectionUtils.invokeMethodWithArray;
 import static com.github.ryarnyah.ReflectionUtils.tryGetMethod;
@@ -32,6 +41,8 @@ import static org.apache.commons.lang3.StringUtils.isNotEmpty;
         threadSafe = true,
         requiresDependencyResolution = ResolutionScope.COMPILE)
 public class JavacardConverterMojo extends AbstractMojo {
+    private static final Instant DEFAULT_OUTPUT_TIMESTAMP = Instant.parse("1980-02-01T00:00:00Z");
+
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     private MavenProject project;
     @Parameter(defaultValue = "${session}", readonly = true, required = true)
@@ -40,8 +51,33 @@ public class JavacardConverterMojo extends AbstractMojo {
     private String runtimeId;
     @Parameter(property = "maven.javacard.timeoutInSeconds", defaultValue = "60")
     private int timeoutInSeconds;
+    @Parameter(property = "maven.javacard.threads", defaultValue = "1")
+    private int threads;
     @Parameter(property = "maven.javacard.debug", defaultValue = "false")
     private boolean debug;
+    @Parameter(property = "maven.javacard.verbose", defaultValue = "false")
+    private boolean verbose;
+    @Parameter(property = "maven.javacard.profile", defaultValue = "false")
+    private boolean profile;
+    @Parameter(property = "maven.javacard.reproducible", defaultValue = "false")
+    private boolean reproducible;
+    /**
+     * Timestamp of reproducible outputs, ISO-8601 or seconds since the epoch. Enables reproducible outputs.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+    @Parameter(property = "maven.javacard.attach", defaultValue = "true")
+    private boolean attach;
+    /**
+     * Converter JVM options preset, short-lived or none. Can be overridden per applet.
+     */
+    @Parameter(property = "maven.javacard.jvmProfile", defaultValue = ConverterJvmProfile.SHORT_LIVED)
+    private String jvmProfile;
+    /**
+     * Additional converter JVM options, after the profile ones. Applet jvmArgs replace them.
+     */
+    @Parameter
+    private List<String> jvmArgs;
     @Parameter(property = "maven.javacard.jcdk")
     private String jcdkPath;
     @Parameter(property = "jvm")
@@ -50,19 +86,11 @@ public class JavacardConverterMojo extends AbstractMojo {
     private List<JavacardApplet> applets;
     @Component
     private ToolchainManager toolchainManager;
+    @Component
+    private MavenProjectHelper projectHelper;
     @Parameter
     private Map<String, String> jdkToolchain;
 
-    /**
-     * A plexus-util StreamConsumer to redirect messages to plugin log
-     */
-    private final StreamConsumer out = line -> getLog().info(line);
-
-    /**
-     * A plexus-util StreamConsumer to redirect errors to plugin log
-     */
-    private final StreamConsumer err = line -> getLog().error(line);
-
     public void execute()
             throws MojoExecutionException, MojoFailureException {
         String javaPath = getEffectiveJvm(getToolchain());
@@ -86,22 +114,136 @@ public class JavacardConverterMojo extends AbstractMojo {
             if (StringUtils.isEmpty(applet.getPackageName())) {
                 throw new MojoFailureException("PackageName is mandatory for applet " + applet);
             }
+            String appletJvmProfile = applet.getJvmProfile() != null ? applet.getJvmProfile() : jvmProfile;
+            if (!ConverterJvmProfile.SHORT_LIVED.equals(appletJvmProfile)
+                    && !ConverterJvmProfile.NONE.equals(appletJvmProfile)) {
+                throw new MojoFailureException("Unknown JVM profile " + appletJvmProfile + " for applet " + applet
+                        + ", expected " + ConverterJvmProfile.SHORT_LIVED + " or " + ConverterJvmProfile.NONE);
+            }
+            if (applet.getOutputFormats() != null) {
+                for (String format : applet.getOutputFormats()) {
+                    if (!JavacardConverter.OUTPUT_FORMATS.contains(format.toUpperCase())) {
+                        throw new MojoFailureException("Unknown output format " + format + " for applet " + applet
+                                + ", expected one of " + JavacardConverter.OUTPUT_FORMATS);
+                    }
+                }
+            }
+            Path recording = JavacardConverter.getReportFile(project, applet, "jfr");
+            if (profile && recording.toString().indexOf(',') >= 0) {
+                throw new MojoFailureException("Unable to profile applet " + applet + ", flight recorder options can not"
+                        + " contain a comma: " + recording);
+            }
+        }
+
+        Path profileSettings = getProfileSettings();
+        int javaVersion = ConverterJvmProfile.getJavaVersion(javaPath);
+        getLog().debug("Got java version: " + javaVersion);
+        Instant timestamp = getReproducibleTimestamp(outputTimestamp, reproducible);
+        Path jcmd = Paths.get(javaPath).resolveSibling(javaPath.endsWith(".exe") ? "jcmd.exe" : "jcmd");
+        Map<JavacardApplet, List<Path>> published = new ConcurrentHashMap<>();
+        try (ConverterSupervisor supervisor = new ConverterSupervisor(threads, jcmd, getLog())) {
+            for (JavacardApplet applet : applets) {
+                supervisor.submit(() -> {
+                    published.put(applet, convert(supervisor, javaPath, javaVersion, jcdk, applet, profileSettings, timestamp));
+                    return null;
+                });
+            }
+            supervisor.await();
+        }
+
+        if (attach) {
+            for (JavacardApplet applet : applets) {
+                for (Path file : published.get(applet)) {
+                    String type = FilenameUtils.getExtension(file.getFileName().toString()).toLowerCase();
+                    projectHelper.attachArtifact(project, type, getClassifier(applet), file.toFile());
+                }
+            }
+        }
+    }
+
+    private static String getClassifier(JavacardApplet applet) {
+        if (isNotEmpty(applet.getClassifier())) {
+            return applet.getClassifier();
+        }
+        if (isNotEmpty(applet.getOutputName())) {
+            return applet.getOutputName();
+        }
+        return applet.getPackageName().substring(applet.getPackageName().lastIndexOf('.') + 1);
+    }
+
+    private List<Path> convert(ConverterSupervisor supervisor,
+                               String javaPath,
+                               int javaVersion,
+                               JavacardJCDK jcdk,
+                               JavacardApplet applet,
+                               Path profileSettings,
+                               Instant timestamp) throws MojoExecutionException {
+        int appletTimeoutInSeconds = applet.getTimeoutInSeconds() != null
+                ? applet.getTimeoutInSeconds() : timeoutInSeconds;
+        Path transcript = JavacardConverter.getReportFile(project, applet, "log");
+        List<String> appletJvmArgs = new ArrayList<>(ConverterJvmProfile.getJvmArgs(
+                applet.getJvmProfile() != null ? applet.getJvmProfile() : jvmProfile,
+                javaVersion,
+                transcript.getParent()));
+        if (applet.getJvmArgs() != null) {
+            appletJvmArgs.addAll(applet.getJvmArgs());
+        } else if (jvmArgs != null) {
+            appletJvmArgs.addAll(jvmArgs);
+        }
+        try (ConverterOutput output = new ConverterOutput(
+                applet.toString(), applet.getPackageName(), transcript, verbose, getLog())) {
+            return JavacardConverter.convertCAP(
+                    javaPath,
+                    supervisor,
+                    appletTimeoutInSeconds,
+                    project,
+                    output.getOut(),
+                    output.getErr(),
+                    jcdk,
+                    applet,
+                    debug,
+                    profileSettings,
+                    timestamp,
+                    appletJvmArgs,
+                    getLog()
+            );
+        } catch (CancellationException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MojoExecutionException("Unable to convert cap " + applet + ", see " + transcript, e);
+        }
+    }
+
+    /**
+     * @param outputTimestamp ISO-8601 or seconds since the epoch, as project.build.outputTimestamp
+     * @param reproducible    whether outputs are reproducible without outputTimestamp
+     * @return timestamp of reproducible outputs, null if outputs are not reproducible
+     */
+    static Instant getReproducibleTimestamp(String outputTimestamp, boolean reproducible)
+            throws MojoFailureException {
+        // A single character disables it, as with maven-archiver
+        if (isNotEmpty(outputTimestamp) && outputTimestamp.length() > 1) {
             try {
-                JavacardConverter.convertCAP(
-                        javaPath,
-                        timeoutInSeconds,
-                        project,
-                        out,
-                        err,
-                        jcdk,
-                        applet,
-                        debug,
-                        getLog()
-                );
-            } catch (Exception e) {
-                throw new MojoExecutionException("Unable to convert cap", e);
+                if (StringUtils.isNumeric(outputTimestamp)) {
+                    return Instant.ofEpochSecond(Long.parseLong(outputTimestamp));
+                }
+                return OffsetDateTime.parse(outputTimestamp).toInstant();
+            } catch (DateTimeParseException e) {
+                throw new MojoFailureException("Invalid outputTimestamp " + outputTimestamp, e);
             }
         }
+        return reproducible ? DEFAULT_OUTPUT_TIMESTAMP : null;
+    }
+
+    private Path getProfileSettings() throws MojoExecutionException {
+        if (!profile) {
+            return null;
+        }
+        try {
+            return ConverterProfiler.writeSettings(Paths.get(project.getBuild().getDirectory(), "javacard-converter"));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write profiling settings", e);
+        }
     }
 
     private String getEffectiveJvm(Toolchain toolchain) throws MojoFailureException {
@@ -197,6 +339,14 @@ public class JavacardConverterMojo extends AbstractMojo {
         this.timeoutInSeconds = timeoutInSeconds;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public String getJcdkPath() {
         return jcdkPath;
     }
@@ -240,4 +390,68 @@ public class JavacardConverterMojo extends AbstractMojo {
     public void setDebug(boolean debug) {
         this.debug = debug;
     }
+
+    public String getJvmProfile() {
+        return jvmProfile;
+    }
+
+    public void setJvmProfile(String jvmProfile) {
+        this.jvmProfile = jvmProfile;
+    }
+
+    public List<String> getJvmArgs() {
+        return jvmArgs;
+    }
+
+    public void setJvmArgs(List<String> jvmArgs) {
+        this.jvmArgs = jvmArgs;
+    }
+
+    public boolean isAttach() {
+        return attach;
+    }
+
+    public void setAttach(boolean attach) {
+        this.attach = attach;
+    }
+
+    public MavenProjectHelper getProjectHelper() {
+        return projectHelper;
+    }
+
+    public void setProjectHelper(MavenProjectHelper projectHelper) {
+        this.projectHelper = projectHelper;
+    }
+
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    public void setReproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+    }
+
+    public String getOutputTimestamp() {
+        return outputTimestamp;
+    }
+
+    public void setOutputTimestamp(String outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
+    }
+
+    public boolean isProfile() {
+        return profile;
+    }
+
+    public void setProfile(boolean profile) {
+        this.profile = profile;
+    }
+
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
 }
@@ -0,0 +1,52 @@
+package com.github.ryarnyah;
+
+/**
+ * An export file contributed by a library jar.
+ */
+public class JavacardExport {
+    private final String path;
+    private final String packageName;
+    private final String packageAID;
+    private final String packageVersion;
+    private final String digest;
+
+    /**
+     * @param path           path of the export file in the jar
+     * @param packageName    exported package, null when the jar is not indexed
+     * @param packageAID     package AID, null when the jar is not indexed
+     * @param packageVersion package version, null when the jar is not indexed
+     * @param digest         SHA-256 of the export file, null when the jar is not indexed
+     */
+    public JavacardExport(String path, String packageName, String packageAID, String packageVersion, String digest) {
+        this.path = path;
+        this.packageName = packageName;
+        this.packageAID = packageAID;
+        this.packageVersion = packageVersion;
+        this.digest = digest;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public String getPackageAID() {
+        return packageAID;
+    }
+
+    public String getPackageVersion() {
+        return packageVersion;
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    @Override
+    public String toString() {
+        return packageName != null ? packageName + " (" + path + ")" : path;
+    }
+}
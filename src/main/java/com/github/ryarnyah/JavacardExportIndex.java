@@ -0,0 +1,154 @@
+package com.github.ryarnyah;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipException;
+
+/**
+ * Find the export files of a library jar.
+ * <p>
+ * Jars produced by this plugin list their exports in the manifest: the main attribute
+ * {@value #EXPORTS_ATTRIBUTE} holds the exported packages and each export file has its own manifest
+ * section. Other jars are looked up through their central directory only, entries are never read.
+ * Results are cached by file, size and modification time for the lifetime of the plugin.
+ */
+public class JavacardExportIndex {
+    public static final String EXPORTS_ATTRIBUTE = "Javacard-Exports";
+    public static final String PACKAGE_ATTRIBUTE = "Javacard-Package";
+    public static final String PACKAGE_AID_ATTRIBUTE = "Javacard-Package-AID";
+    public static final String PACKAGE_VERSION_ATTRIBUTE = "Javacard-Package-Version";
+    public static final String DIGEST_ATTRIBUTE = "Javacard-Export-SHA-256";
+
+    private static final Map<Key, List<JavacardExport>> CACHE = new ConcurrentHashMap<>();
+
+    private JavacardExportIndex() {
+    }
+
+    /**
+     * @param file library file
+     * @return export files of the library, empty if the file is not a jar or has no export
+     */
+    public static List<JavacardExport> read(File file) throws IOException {
+        if (file == null || !file.isFile()) {
+            return Collections.emptyList();
+        }
+        Key key = new Key(file);
+        List<JavacardExport> exports = CACHE.get(key);
+        if (exports == null) {
+            exports = Collections.unmodifiableList(load(file));
+            CACHE.put(key, exports);
+        }
+        return exports;
+    }
+
+    private static List<JavacardExport> load(File file) throws IOException {
+        List<JavacardExport> exports = new ArrayList<>();
+        try (JarFile jarFile = new JarFile(file, false)) {
+            Manifest manifest = jarFile.getManifest();
+            if (manifest != null && manifest.getMainAttributes().getValue(EXPORTS_ATTRIBUTE) != null) {
+                for (Map.Entry<String, Attributes> section : manifest.getEntries().entrySet()) {
+                    Attributes attributes = section.getValue();
+                    if (attributes.getValue(PACKAGE_ATTRIBUTE) != null) {
+                        exports.add(new JavacardExport(
+                                section.getKey(),
+                                attributes.getValue(PACKAGE_ATTRIBUTE),
+                                attributes.getValue(PACKAGE_AID_ATTRIBUTE),
+                                attributes.getValue(PACKAGE_VERSION_ATTRIBUTE),
+                                attributes.getValue(DIGEST_ATTRIBUTE)));
+                    }
+                }
+                return exports;
+            }
+            Enumeration<JarEntry> entries = jarFile.entries();
+            while (entries.hasMoreElements()) {
+                JarEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".exp")) {
+                    exports.add(new JavacardExport(entry.getName(), null, null, null, null));
+                }
+            }
+        } catch (ZipException e) {
+            // Not a jar (pom, ...)
+        }
+        return exports;
+    }
+
+    /**
+     * Write a manifest indexing the given exports.
+     */
+    public static Manifest createManifest(List<JavacardExport> exports) {
+        Manifest manifest = new Manifest();
+        Attributes mainAttributes = manifest.getMainAttributes();
+        mainAttributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        StringJoiner packages = new StringJoiner(" ");
+        for (JavacardExport export : exports) {
+            packages.add(export.getPackageName());
+            Attributes attributes = new Attributes();
+            attributes.putValue(PACKAGE_ATTRIBUTE, export.getPackageName());
+            attributes.putValue(PACKAGE_AID_ATTRIBUTE, export.getPackageAID());
+            attributes.putValue(PACKAGE_VERSION_ATTRIBUTE, export.getPackageVersion());
+            attributes.putValue(DIGEST_ATTRIBUTE, export.getDigest());
+            manifest.getEntries().put(export.getPath(), attributes);
+        }
+        mainAttributes.putValue(EXPORTS_ATTRIBUTE, packages.toString());
+        return manifest;
+    }
+
+    /**
+     * @return hex encoded SHA-256 of the stream content
+     */
+    public static String sha256(InputStream inputStream) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buf = new byte[8192];
+            int r;
+            while ((r = inputStream.read(buf)) != -1) {
+                digest.update(buf, 0, r);
+            }
+            return new String(Hex.encodeHex(digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("SHA-256 is not available", e);
+        }
+    }
+
+    private static class Key {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+
+        private Key(File file) {
+            this.path = file.getAbsolutePath();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return length == key.length && lastModified == key.lastModified && path.equals(key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, length, lastModified);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.github.ryarnyah;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.MavenProjectHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Package the export files of converted packages into an indexed jar.
+ * <p>
+ * Export files are stored as {@code <package path>/javacard/<name>.exp}, the layout expected by the
+ * converter export path, and indexed in the manifest (see {@link JavacardExportIndex}). With reproducible
+ * outputs, entries get the same timestamp as the converted files.
+ */
+@Mojo(
+        name = "export",
+        defaultPhase = LifecyclePhase.PACKAGE,
+        threadSafe = true)
+public class JavacardExportMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+    @Parameter(property = "applets")
+    private List<JavacardApplet> applets;
+    @Parameter(property = "maven.javacard.exportClassifier", defaultValue = "exports")
+    private String classifier;
+    @Parameter(property = "maven.javacard.attachExports", defaultValue = "true")
+    private boolean attach;
+    @Parameter(property = "maven.javacard.reproducible", defaultValue = "false")
+    private boolean reproducible;
+    /**
+     * Timestamp of reproducible outputs, ISO-8601 or seconds since the epoch. Enables reproducible outputs.
+     */
+    @Parameter(defaultValue = "${project.build.outputTimestamp}")
+    private String outputTimestamp;
+    @Component
+    private MavenProjectHelper projectHelper;
+
+    public void execute()
+            throws MojoExecutionException, MojoFailureException {
+        Path convertedPath = Paths.get(project.getBuild().getDirectory(), "javacard-compile");
+        Instant timestamp = JavacardConverterMojo.getReproducibleTimestamp(outputTimestamp, reproducible);
+        VersionInformation versionInformation = new VersionInformation(project.getVersion());
+        String version = versionInformation.getMajor() + "." + versionInformation.getMinor();
+
+        Map<String, JavacardApplet> packages = new LinkedHashMap<>();
+        for (JavacardApplet applet : applets) {
+            if (StringUtils.isEmpty(applet.getPackageAID())) {
+                throw new MojoFailureException("PackageAID is mandatory for applet " + applet);
+            }
+            if (StringUtils.isEmpty(applet.getPackageName())) {
+                throw new MojoFailureException("PackageName is mandatory for applet " + applet);
+            }
+            packages.putIfAbsent(applet.getPackageName(), applet);
+        }
+
+        List<JavacardExport> exports = new ArrayList<>();
+        Map<JavacardExport, Path> files = new LinkedHashMap<>();
+        for (JavacardApplet applet : packages.values()) {
+            String packagePath = applet.getPackageName().replace('.', '/');
+            String expName = applet.getPackageName().substring(applet.getPackageName().lastIndexOf('.') + 1) + ".exp";
+            String entryName = packagePath + "/javacard/" + expName;
+            Path exp = convertedPath.resolve(entryName);
+            if (!Files.isRegularFile(exp)) {
+                throw new MojoFailureException("Unable to find export file " + exp + ", run convert first");
+            }
+            try (InputStream is = Files.newInputStream(exp)) {
+                JavacardExport export = new JavacardExport(
+                        entryName,
+                        applet.getPackageName(),
+                        Hex.encodeHexString(Hex.decodeHex(applet.getPackageAID()), false),
+                        version,
+                        JavacardExportIndex.sha256(is));
+                exports.add(export);
+                files.put(export, exp);
+            } catch (DecoderException e) {
+                throw new MojoFailureException("Invalid PackageAID for applet " + applet, e);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Unable to read " + exp, e);
+            }
+        }
+
+        File jar = new File(project.getBuild().getDirectory(),
+                project.getBuild().getFinalName() + "-" + classifier + ".jar");
+        try (OutputStream os = Files.newOutputStream(jar.toPath());
+             JarOutputStream jos = new JarOutputStream(os)) {
+            // Written by hand: JarOutputStream(OutputStream, Manifest) stamps it with the current time
+            Manifest manifest = JavacardExportIndex.createManifest(exports);
+            jos.putNextEntry(createEntry(JarFile.MANIFEST_NAME, timestamp));
+            manifest.write(jos);
+            jos.closeEntry();
+            for (Map.Entry<JavacardExport, Path> file : files.entrySet()) {
+                jos.putNextEntry(createEntry(file.getKey().getPath(), timestamp));
+                Files.copy(file.getValue(), jos);
+                jos.closeEntry();
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + jar, e);
+        }
+        getLog().info("Packaged exports " + exports + " in " + jar);
+
+        if (attach) {
+            projectHelper.attachArtifact(project, "jar", classifier, jar);
+        }
+    }
+
+    private static JarEntry createEntry(String name, Instant timestamp) {
+        JarEntry entry = new JarEntry(name);
+        if (timestamp != null) {
+            entry.setTimeLocal(LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC));
+        }
+        return entry;
+    }
+
+    public MavenProject getProject() {
+        return project;
+    }
+
+    public void setProject(MavenProject project) {
+        this.project = project;
+    }
+
+    public List<JavacardApplet> getApplets() {
+        return applets;
+    }
+
+    public void setApplets(List<JavacardApplet> applets) {
+        this.applets = applets;
+    }
+
+    public String getClassifier() {
+        return classifier;
+    }
+
+    public void setClassifier(String classifier) {
+        this.classifier = classifier;
+    }
+
+    public boolean isAttach() {
+        return attach;
+    }
+
+    public void setAttach(boolean attach) {
+        this.attach = attach;
+    }
+
+    public boolean isReproducible() {
+        return reproducible;
+    }
+
+    public void setReproducible(boolean reproducible) {
+        this.reproducible = reproducible;
+    }
+
+    public String getOutputTimestamp() {
+        return outputTimestamp;
+    }
+
+    public void setOutputTimestamp(String outputTimestamp) {
+        this.outputTimestamp = outputTimestamp;
+    }
+
+    public MavenProjectHelper getProjectHelper() {
+        return projectHelper;
+    }
+
+    public void setProjectHelper(MavenProjectHelper projectHelper) {
+        this.projectHelper = projectHelper;
+    }
+}
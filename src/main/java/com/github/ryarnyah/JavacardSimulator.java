@@ -0,0 +1,200 @@
+package com.github.ryarnyah;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.github.ryarnyah.ReflectionUtils.invokeMethodWithArray;
+
+/**
+ * A jCardSim card simulator.
+ * <p>
+ * jCardSim keeps the current card runtime in static fields, so simulators running at the same time
+ * must live in distinct class loaders (see {@link #createClassLoader(List, List)}). The simulator is
+ * driven by reflection as its classes are not visible from the plugin class loader.
+ * <p>
+ * Applet classes loaded by {@link #createClassLoader(List, List, List)} update their own
+ * {@link AppletCounters}, read with {@link #getCounters()}.
+ */
+public class JavacardSimulator {
+    private static final String JCARDSIM = "com.licel:jcardsim";
+    private static final String SIMULATOR_CLASS = "com.licel.jcardsim.smartcardio.CardSimulator";
+    private static final String AID_UTIL_CLASS = "com.licel.jcardsim.utils.AIDUtil";
+    private static final String AID_CLASS = "javacard.framework.AID";
+
+    private final ClassLoader classLoader;
+    private final Object simulator;
+    private final Method createAID;
+    private final Method installApplet;
+    private final Method transmitCommand;
+
+    public JavacardSimulator(ClassLoader classLoader) throws MojoExecutionException {
+        this.classLoader = classLoader;
+        try {
+            Class<?> simulatorClass = classLoader.loadClass(SIMULATOR_CLASS);
+            Class<?> aidClass = classLoader.loadClass(AID_CLASS);
+            this.simulator = simulatorClass.getConstructor().newInstance();
+            this.createAID = classLoader.loadClass(AID_UTIL_CLASS).getMethod("create", String.class);
+            this.installApplet = simulatorClass.getMethod("installApplet", aidClass, Class.class);
+            this.transmitCommand = simulatorClass.getMethod("transmitCommand", byte[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new MojoExecutionException("Unable to create jCardSim simulator", e);
+        }
+    }
+
+    /**
+     * Class loader holding jCardSim, then the applet classes and their dependencies.
+     *
+     * @param pluginArtifacts artifacts of this plugin
+     * @param classpath       applet classes and dependencies
+     */
+    public static URLClassLoader createClassLoader(List<Artifact> pluginArtifacts, List<String> classpath)
+            throws MojoExecutionException {
+        return new URLClassLoader(getUrls(pluginArtifacts, classpath), ClassLoader.getPlatformClassLoader());
+    }
+
+    /**
+     * Class loader holding jCardSim, then the applet classes and their dependencies, instrumenting the classes
+     * of the given packages and of their subpackages with {@link AppletInstrumenter}.
+     *
+     * @param pluginArtifacts artifacts of this plugin
+     * @param classpath       applet classes and dependencies
+     * @param packages        packages of the applets
+     */
+    public static URLClassLoader createClassLoader(List<Artifact> pluginArtifacts,
+                                                   List<String> classpath,
+                                                   List<String> packages) throws MojoExecutionException {
+        return new InstrumentingClassLoader(getUrls(pluginArtifacts, classpath), packages);
+    }
+
+    private static URL[] getUrls(List<Artifact> pluginArtifacts, List<String> classpath)
+            throws MojoExecutionException {
+        List<URL> urls = new ArrayList<>();
+        try {
+            // jCardSim first, its Javacard API implementation must win over api.jar
+            for (Artifact artifact : pluginArtifacts) {
+                if (isJcardsim(artifact)) {
+                    urls.add(artifact.getFile().toURI().toURL());
+                }
+            }
+            for (String element : classpath) {
+                urls.add(Paths.get(element).toUri().toURL());
+            }
+        } catch (MalformedURLException e) {
+            throw new MojoExecutionException("Invalid simulator classpath", e);
+        }
+        return urls.toArray(new URL[0]);
+    }
+
+    private static boolean isJcardsim(Artifact artifact) {
+        if ((artifact.getGroupId() + ":" + artifact.getArtifactId()).equals(JCARDSIM)) {
+            return true;
+        }
+        List<String> trail = artifact.getDependencyTrail();
+        return trail != null && trail.stream().anyMatch(t -> t.startsWith(JCARDSIM + ":"));
+    }
+
+    /**
+     * Install an applet.
+     *
+     * @param appletAID  applet AID in hexadecimal
+     * @param appletClass fully qualified applet class name
+     */
+    public void install(String appletAID, String appletClass) throws MojoExecutionException, MojoFailureException {
+        Class<?> applet;
+        try {
+            applet = classLoader.loadClass(appletClass);
+        } catch (ClassNotFoundException e) {
+            throw new MojoExecutionException("Unable to load applet " + appletClass, e);
+        }
+        Object aid = invokeMethodWithArray(null, createAID, appletAID);
+        invokeMethodWithArray(simulator, installApplet, aid, applet);
+    }
+
+    /**
+     * Send a command APDU.
+     *
+     * @return the response APDU, including the status word
+     */
+    public byte[] transmit(byte[] command) throws MojoFailureException {
+        return invokeMethodWithArray(simulator, transmitCommand, (Object) command);
+    }
+
+    /**
+     * Counters of the instrumented applet classes.
+     *
+     * @return counters indexed as in {@link AppletCounters#snapshot()}
+     */
+    public long[] getCounters() throws MojoExecutionException, MojoFailureException {
+        Method snapshot;
+        try {
+            snapshot = classLoader.loadClass(AppletCounters.class.getName()).getMethod("snapshot");
+        } catch (ReflectiveOperationException e) {
+            throw new MojoExecutionException("Simulator class loader does not instrument applets", e);
+        }
+        return invokeMethodWithArray(null, snapshot);
+    }
+
+    private static class InstrumentingClassLoader extends URLClassLoader {
+        static {
+            registerAsParallelCapable();
+        }
+
+        private final List<String> packages;
+
+        InstrumentingClassLoader(URL[] urls, List<String> packages) {
+            super(urls, ClassLoader.getPlatformClassLoader());
+            this.packages = packages;
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> c = findLoadedClass(name);
+                if (c == null) {
+                    if (AppletCounters.class.getName().equals(name)) {
+                        // Defined again here, to get counters local to this class loader
+                        c = define(name, read(AppletCounters.class.getClassLoader(), name));
+                    } else if (isInstrumented(name)) {
+                        c = define(name, AppletInstrumenter.instrument(read(this, name)));
+                    } else {
+                        return super.loadClass(name, resolve);
+                    }
+                }
+                if (resolve) {
+                    resolveClass(c);
+                }
+                return c;
+            }
+        }
+
+        private boolean isInstrumented(String name) {
+            return packages.stream().anyMatch(p -> name.startsWith(p + "."));
+        }
+
+        private Class<?> define(String name, byte[] classFile) {
+            return defineClass(name, classFile, 0, classFile.length);
+        }
+
+        private static byte[] read(ClassLoader classLoader, String name) throws ClassNotFoundException {
+            try (InputStream is = classLoader.getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (is == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                return is.readAllBytes();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.github.ryarnyah;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.apache.maven.project.MavenProject;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Replay APDU scripts against the configured applets in jCardSim.
+ * <p>
+ * Each script gets a fresh simulator with every configured applet installed; scripts run in parallel,
+ * each one in its own simulator class loader so that applet and jCardSim static state never leaks between
+ * scripts.
+ */
+@Mojo(
+        name = "test",
+        defaultPhase = LifecyclePhase.INTEGRATION_TEST,
+        threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.TEST)
+public class JavacardTestMojo extends AbstractMojo {
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+    @Parameter(defaultValue = "${plugin.artifacts}", readonly = true, required = true)
+    private List<Artifact> pluginArtifacts;
+    @Parameter(property = "applets")
+    private List<JavacardApplet> applets;
+    @Parameter(property = "maven.javacard.apduScripts", defaultValue = "${project.basedir}/src/test/apdu")
+    private File scriptDirectory;
+    @Parameter(property = "maven.javacard.testThreads", defaultValue = "0")
+    private int threads;
+    @Parameter(property = "skipTests", defaultValue = "false")
+    private boolean skip;
+
+    public void execute()
+            throws MojoExecutionException, MojoFailureException {
+        if (skip) {
+            getLog().info("Tests are skipped.");
+            return;
+        }
+        for (JavacardApplet applet : applets) {
+            if (StringUtils.isEmpty(applet.getAppletAID())) {
+                throw new MojoFailureException("AppletAID is mandatory for applet " + applet);
+            }
+            if (StringUtils.isEmpty(applet.getAppletClass())) {
+                throw new MojoFailureException("AppletClass is mandatory for applet " + applet);
+            }
+            if (StringUtils.isEmpty(applet.getPackageName())) {
+                throw new MojoFailureException("PackageName is mandatory for applet " + applet);
+            }
+        }
+        List<ApduScript> scripts = findScripts();
+        if (scripts.isEmpty()) {
+            getLog().info("No APDU script in " + scriptDirectory);
+            return;
+        }
+        List<String> classpath;
+        try {
+            classpath = project.getTestClasspathElements();
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException("Unable to resolve test classpath", e);
+        }
+
+        int workers = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, scripts.size()));
+        List<Result> results = new ArrayList<>();
+        long start = System.nanoTime();
+        try {
+            List<Future<Result>> futures = new ArrayList<>();
+            for (ApduScript script : scripts) {
+                futures.add(executor.submit(() -> run(script, classpath)));
+            }
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException("Unable to run APDU scripts", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while running APDU scripts", e);
+        } finally {
+            executor.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        report(results, elapsed);
+        long failures = results.stream().filter(r -> r.failure != null).count();
+        if (failures > 0) {
+            throw new MojoFailureException(failures + " of " + results.size() + " APDU script(s) failed");
+        }
+    }
+
+    private List<ApduScript> findScripts() throws MojoExecutionException {
+        if (!scriptDirectory.isDirectory()) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.walk(scriptDirectory.toPath())) {
+            List<ApduScript> scripts = new ArrayList<>();
+            for (Path path : paths.filter(p -> p.toString().endsWith(".apdu")).sorted().collect(Collectors.toList())) {
+                scripts.add(ApduScript.parse(path));
+            }
+            return scripts;
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to read APDU scripts", e);
+        }
+    }
+
+    private Result run(ApduScript script, List<String> classpath) throws Exception {
+        Thread thread = Thread.currentThread();
+        ClassLoader contextClassLoader = thread.getContextClassLoader();
+        try (URLClassLoader classLoader = JavacardSimulator.createClassLoader(pluginArtifacts, classpath)) {
+            thread.setContextClassLoader(classLoader);
+            JavacardSimulator simulator = new JavacardSimulator(classLoader);
+            for (JavacardApplet applet : applets) {
+                simulator.install(applet.getAppletAID(), applet.getPackageName() + "." + applet.getAppletClass());
+            }
+            int count = 0;
+            long start = System.nanoTime();
+            for (ApduScript.Command command : script.getCommands()) {
+                byte[] response;
+                try {
+                    response = simulator.transmit(command.getApdu());
+                } catch (MojoFailureException e) {
+                    return new Result(script, count, System.nanoTime() - start,
+                            "line " + command.getLine() + ": " + e.getCause());
+                }
+                count++;
+                if (!command.matches(response)) {
+                    return new Result(script, count, System.nanoTime() - start,
+                            "line " + command.getLine() + ": expected " + command.getExpected()
+                                    + " but got " + Hex.encodeHexString(response, false));
+                }
+            }
+            return new Result(script, count, System.nanoTime() - start, null);
+        } finally {
+            thread.setContextClassLoader(contextClassLoader);
+        }
+    }
+
+    private void report(List<Result> results, long elapsed) throws MojoExecutionException {
+        StringBuilder report = new StringBuilder();
+        long apdus = 0;
+        for (Result result : results) {
+            apdus += result.apdus;
+            String line = String.format("%s %s (%d APDU(s), %.1f ms)%s",
+                    result.failure == null ? "PASS" : "FAIL",
+                    scriptDirectory.toPath().relativize(result.script.getPath()),
+                    result.apdus,
+                    result.nanos / 1e6,
+                    result.failure == null ? "" : ": " + result.failure);
+            if (result.failure == null) {
+                getLog().info(line);
+            } else {
+                getLog().error(line);
+            }
+            report.append(line).append('\n');
+        }
+        String summary = String.format("%d script(s), %d APDU(s) in %.1f s, %.0f APDU/s",
+                results.size(), apdus, elapsed / 1e9, apdus / (elapsed / 1e9));
+        getLog().info(summary);
+        report.append(summary).append('\n');
+
+        Path reportFile = Paths.get(project.getBuild().getDirectory(), "javacard-test-reports", "apdu.txt");
+        try {
+            Files.createDirectories(reportFile.getParent());
+            Files.write(reportFile, report.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Unable to write " + reportFile, e);
+        }
+    }
+
+    public MavenProject getProject() {
+        return project;
+    }
+
+    public void setProject(MavenProject project) {
+        this.project = project;
+    }
+
+    public List<JavacardApplet> getApplets() {
+        return applets;
+    }
+
+    public void setApplets(List<JavacardApplet> applets) {
+        this.applets = applets;
+    }
+
+    public File getScriptDirectory() {
+        return scriptDirectory;
+    }
+
+    public void setScriptDirectory(File scriptDirectory) {
+        this.scriptDirectory = scriptDirectory;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public boolean isSkip() {
+        return skip;
+    }
+
+    public void setSkip(boolean skip) {
+        this.skip = skip;
+    }
+
+    private static class Result {
+        private final ApduScript script;
+        private final int apdus;
+        private final long nanos;
+        private final String failure;
+
+        private Result(ApduScript script, int apdus, long nanos, String failure) {
+            this.script = script;
+            this.apdus = apdus;
+            this.nanos = nanos;
+            this.failure = failure;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.github.ryarnyah;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * SHA-256 sidecar files of conversion outputs, in the sha256sum format.
+ */
+public class OutputDigests {
+    public static final String EXTENSION = ".sha256";
+
+    private OutputDigests() {
+    }
+
+    public static String sha256(Path file) throws IOException {
+        try (InputStream is = Files.newInputStream(file)) {
+            return JavacardExportIndex.sha256(is);
+        }
+    }
+
+    public static Path getSidecar(Path file) {
+        return file.resolveSibling(file.getFileName() + EXTENSION);
+    }
+
+    /**
+     * @return the digest recorded for the file, null if none
+     */
+    public static String read(Path file) throws IOException {
+        Path sidecar = getSidecar(file);
+        if (!Files.isRegularFile(sidecar)) {
+            return null;
+        }
+        String content = new String(Files.readAllBytes(sidecar), StandardCharsets.UTF_8).trim();
+        int space = content.indexOf(' ');
+        return space > 0 ? content.substring(0, space) : content;
+    }
+
+    public static void write(Path file, String digest) throws IOException {
+        String content = digest + "  " + file.getFileName() + "\n";
+        Files.write(getSidecar(file), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return true if the file exists, its recorded digest and its content match the digest
+     */
+    public static boolean isUpToDate(Path file, String digest) throws IOException {
+        return Files.isRegularFile(file) && digest.equals(read(file)) && digest.equals(sha256(file));
+    }
+}
@@ -0,0 +1,70 @@
+package com.github.ryarnyah;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class ApduScriptTest extends TestCase {
+    private Path script;
+
+    @Override
+    protected void setUp() throws Exception {
+        script = Files.createTempFile("script", ".apdu");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(script);
+    }
+
+    private ApduScript parse(String content) throws IOException {
+        Files.write(script, content.getBytes(StandardCharsets.UTF_8));
+        return ApduScript.parse(script);
+    }
+
+    public void testParse() throws IOException {
+        ApduScript apduScript = parse("# Select\n"
+                + "00A4040007A0000000030000 ; 9000\n"
+                + "\n"
+                + "// Get data\n"
+                + "80 CA 00 00 00 ; xx XX 90 00\n"
+                + "80CB000000\n");
+        assertEquals(3, apduScript.getCommands().size());
+        ApduScript.Command command = apduScript.getCommands().get(1);
+        assertEquals(5, command.getLine());
+        assertEquals(0xCA, command.getIns());
+        assertEquals("XXXX9000", command.getExpected());
+        assertNull(apduScript.getCommands().get(2).getExpected());
+    }
+
+    public void testMatches() throws IOException {
+        ApduScript.Command command = parse("80CA000000 ; 12XX 9000\n").getCommands().get(0);
+        assertTrue(command.matches(new byte[]{0x12, 0x34, (byte) 0x90, 0x00}));
+        assertTrue(command.matches(new byte[]{0x12, 0x00, (byte) 0x90, 0x00}));
+        assertFalse(command.matches(new byte[]{0x13, 0x34, (byte) 0x90, 0x00}));
+        assertFalse(command.matches(new byte[]{0x12, (byte) 0x90, 0x00}));
+    }
+
+    public void testRejectsPartialWildcard() {
+        for (String expected : new String[]{"1X", "X0", "9X00", "900", "90G0"}) {
+            try {
+                parse("80CA000000 ; " + expected + "\n");
+                fail("Expected response " + expected + " should be rejected");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().contains("invalid expected response"));
+            }
+        }
+    }
+
+    public void testRejectsInvalidCommand() {
+        try {
+            parse("80CA00000 ; 9000\n");
+            fail("Odd length command should be rejected");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("invalid command"));
+        }
+    }
+}
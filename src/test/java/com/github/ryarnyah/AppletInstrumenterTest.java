@@ -0,0 +1,187 @@
+package com.github.ryarnyah;
+
+import junit.framework.TestCase;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+public class AppletInstrumenterTest extends TestCase {
+    private static final String PACKAGE = "com.github.ryarnyah.fixture";
+    private static final String APPLET = PACKAGE + ".CountedApplet";
+
+    private Path classes;
+    private URLClassLoader classLoader;
+    private JavacardSimulator simulator;
+    private Method process;
+
+    @Override
+    protected void setUp() throws Exception {
+        classes = Files.createTempDirectory("instrumented");
+        Path classFile = classes.resolve(APPLET.replace('.', '/') + ".class");
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, createApplet());
+
+        // jCardSim is a runtime dependency of the plugin, so it is on the test classpath
+        File jcardsim = new File(Class.forName("com.licel.jcardsim.smartcardio.CardSimulator")
+                .getProtectionDomain().getCodeSource().getLocation().toURI());
+        classLoader = JavacardSimulator.createClassLoader(Collections.emptyList(),
+                Arrays.asList(jcardsim.getPath(), classes.toString()), Collections.singletonList(PACKAGE));
+        simulator = new JavacardSimulator(classLoader);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        classLoader.close();
+        try (Stream<Path> paths = Files.walk(classes)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    public void testCounters() throws Exception {
+        // Loading and initializing a class outside of the boot class loader verifies it
+        Class<?> applet = Class.forName(APPLET, true, classLoader);
+        process = applet.getMethod("process", byte.class, short.class);
+        assertCounters(new long[]{4, 0, 1, 0}, simulator.getCounters());
+
+        // Transient array, element store into it and Util.arrayCopy into it: RAM only
+        assertCounters(new long[]{17, 0, 0, 1}, count((byte) 1, (short) 6));
+        // Transaction, Util.arrayCopy branch
+        assertCounters(new long[]{17, 1, 6, 0}, count((byte) 2, (short) 6));
+        // Transaction, element store branch
+        assertCounters(new long[]{14, 1, 1, 0}, count((byte) 2, (short) 3));
+        assertCounters(new long[]{4, 0, 0, 0}, count((byte) 3, (short) 6));
+    }
+
+    private long[] count(byte ins, short length) throws Exception {
+        long[] before = simulator.getCounters();
+        process.invoke(null, ins, length);
+        long[] counters = simulator.getCounters();
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] -= before[i];
+        }
+        return counters;
+    }
+
+    private static void assertCounters(long[] expected, long[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    /**
+     * Generated, as the Javacard API is only a runtime dependency:
+     * <pre>
+     * public class CountedApplet {
+     *     static byte[] persistent = new byte[16];
+     *
+     *     public static short process(byte ins, short len) {
+     *         switch (ins) {
+     *             case 1:
+     *                 byte[] buffer = JCSystem.makeTransientByteArray((short) 16, JCSystem.CLEAR_ON_DESELECT);
+     *                 buffer[0] = 1;
+     *                 return Util.arrayCopy(persistent, (short) 0, buffer, (short) 1, len);
+     *             case 2:
+     *                 JCSystem.beginTransaction();
+     *                 if (len > 4) {
+     *                     Util.arrayCopy(persistent, (short) 0, persistent, (short) 8, len);
+     *                 } else {
+     *                     persistent[0] = (byte) len;
+     *                 }
+     *                 JCSystem.commitTransaction();
+     *                 return len;
+     *             default:
+     *                 return -1;
+     *         }
+     *     }
+     * }
+     * </pre>
+     */
+    private static byte[] createApplet() {
+        String name = APPLET.replace('.', '/');
+        String jcsystem = "javacard/framework/JCSystem";
+        String util = "javacard/framework/Util";
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V1_8, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, "java/lang/Object", null);
+        cw.visitField(Opcodes.ACC_STATIC, "persistent", "[B", null, null).visitEnd();
+
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_STATIC, "<clinit>", "()V", null, null);
+        mv.visitCode();
+        mv.visitIntInsn(Opcodes.BIPUSH, 16);
+        mv.visitIntInsn(Opcodes.NEWARRAY, Opcodes.T_BYTE);
+        mv.visitFieldInsn(Opcodes.PUTSTATIC, name, "persistent", "[B");
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "process", "(BS)S", null, null);
+        mv.visitCode();
+        Label transientCopy = new Label();
+        Label transaction = new Label();
+        Label fallback = new Label();
+        Label store = new Label();
+        Label commit = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitTableSwitchInsn(1, 2, fallback, transientCopy, transaction);
+
+        mv.visitLabel(transientCopy);
+        mv.visitIntInsn(Opcodes.BIPUSH, 16);
+        mv.visitInsn(Opcodes.ICONST_2);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, jcsystem, "makeTransientByteArray", "(SB)[B", false);
+        mv.visitVarInsn(Opcodes.ASTORE, 2);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitInsn(Opcodes.BASTORE);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, name, "persistent", "[B");
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ALOAD, 2);
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, util, "arrayCopy", "([BS[BSS)S", false);
+        mv.visitInsn(Opcodes.IRETURN);
+
+        mv.visitLabel(transaction);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, jcsystem, "beginTransaction", "()V", false);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.ICONST_4);
+        mv.visitJumpInsn(Opcodes.IF_ICMPLE, store);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, name, "persistent", "[B");
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, name, "persistent", "[B");
+        mv.visitIntInsn(Opcodes.BIPUSH, 8);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, util, "arrayCopy", "([BS[BSS)S", false);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitJumpInsn(Opcodes.GOTO, commit);
+        mv.visitLabel(store);
+        mv.visitFieldInsn(Opcodes.GETSTATIC, name, "persistent", "[B");
+        mv.visitInsn(Opcodes.ICONST_0);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.I2B);
+        mv.visitInsn(Opcodes.BASTORE);
+        mv.visitLabel(commit);
+        mv.visitMethodInsn(Opcodes.INVOKESTATIC, jcsystem, "commitTransaction", "()V", false);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IRETURN);
+
+        mv.visitLabel(fallback);
+        mv.visitInsn(Opcodes.ICONST_M1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+}
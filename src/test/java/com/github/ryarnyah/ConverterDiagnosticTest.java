@@ -0,0 +1,88 @@
+package com.github.ryarnyah;
+
+import junit.framework.TestCase;
+
+public class ConverterDiagnosticTest extends TestCase {
+    private static final String PACKAGE = "com.foo";
+
+    public void testLineAndClass() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse("error: line 42: com.foo.MyApplet: "
+                + "unsupported int type of intermediate value, must cast intermediate value to type short or byte.",
+                PACKAGE);
+        assertEquals(ConverterDiagnostic.Severity.ERROR, diagnostic.getSeverity());
+        assertEquals(42, diagnostic.getLine());
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+        assertNull(diagnostic.getMethod());
+        assertEquals("unsupported int type of intermediate value, must cast intermediate value to type short or byte.",
+                diagnostic.getMessage());
+    }
+
+    public void testBracketedSeverity() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(
+                "[ ERROR: ] line 42: com.foo.MyApplet: unsupported int type of intermediate value", PACKAGE);
+        assertEquals(ConverterDiagnostic.Severity.ERROR, diagnostic.getSeverity());
+        assertEquals(42, diagnostic.getLine());
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+        assertEquals("unsupported int type of intermediate value", diagnostic.getMessage());
+
+        diagnostic = ConverterDiagnostic.parse("[ WARNING: ] com.foo.MyApplet: ignoring method main", PACKAGE);
+        assertEquals(ConverterDiagnostic.Severity.WARNING, diagnostic.getSeverity());
+        assertEquals(-1, diagnostic.getLine());
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+    }
+
+    public void testMethodSegment() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(
+                "warning: line 9: com.foo.MyApplet: method install: invalid static field access", PACKAGE);
+        assertEquals(ConverterDiagnostic.Severity.WARNING, diagnostic.getSeverity());
+        assertEquals(9, diagnostic.getLine());
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+        assertEquals("install", diagnostic.getMethod());
+        assertEquals("invalid static field access", diagnostic.getMessage());
+    }
+
+    public void testMethodDescriptor() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(
+                "error: com.foo.MyApplet.process(Ljavacard/framework/APDU;)V: unsupported long type", PACKAGE);
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+        assertEquals("process(Ljavacard/framework/APDU;)V", diagnostic.getMethod());
+        assertEquals("unsupported long type", diagnostic.getMessage());
+    }
+
+    public void testInternalClassName() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(
+                "error: com/foo/MyApplet: Static array initialization in library package not allowed.", PACKAGE);
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+    }
+
+    public void testClassQuotedInMessage() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(
+                "error: line 17: com.foo.MyApplet: unsupported class java.lang.String.", PACKAGE);
+        assertEquals("com.foo.MyApplet", diagnostic.getClassName());
+        assertEquals("unsupported class java.lang.String.", diagnostic.getMessage());
+
+        diagnostic = ConverterDiagnostic.parse("error: java.lang.String: unsupported class", PACKAGE);
+        assertNull(diagnostic.getClassName());
+        assertEquals("java.lang.String: unsupported class", diagnostic.getMessage());
+
+        diagnostic = ConverterDiagnostic.parse("error: com.foobar.Other: unsupported class", PACKAGE);
+        assertNull(diagnostic.getClassName());
+    }
+
+    public void testWithoutClass() {
+        ConverterDiagnostic diagnostic = ConverterDiagnostic.parse(
+                "[ ERROR: ] Export file framework.exp of package javacard.framework not found.", PACKAGE);
+        assertEquals(ConverterDiagnostic.Severity.ERROR, diagnostic.getSeverity());
+        assertNull(diagnostic.getClassName());
+        assertEquals("Export file framework.exp of package javacard.framework not found.", diagnostic.getMessage());
+    }
+
+    public void testOtherLines() {
+        assertNull(ConverterDiagnostic.parse("Java Card 2.2.2 Class File Converter, Version 1.3", PACKAGE));
+        assertNull(ConverterDiagnostic.parse("parsing /work/target/classes/com/foo/MyApplet.class", PACKAGE));
+        assertNull(ConverterDiagnostic.parse("converting com.foo.MyApplet", PACKAGE));
+        assertNull(ConverterDiagnostic.parse("conversion completed with 2 errors and 1 warnings.", PACKAGE));
+        assertNull(ConverterDiagnostic.parse("[ INFO: ] conversion completed with 1 errors and 1 warnings.", PACKAGE));
+        assertNull(ConverterDiagnostic.parse("", PACKAGE));
+    }
+}